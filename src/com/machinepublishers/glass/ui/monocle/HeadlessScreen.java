@@ -41,6 +41,8 @@ class HeadlessScreen implements NativeScreen {
     protected int width;
     protected int height;
     protected Framebuffer fb;
+    // whether uploaded pixels are composed into the framebuffer
+    protected boolean compose;
 
     HeadlessScreen() {
         this(1280, 800, 32);
@@ -69,9 +71,17 @@ class HeadlessScreen implements NativeScreen {
                         + geometry + "'");
             }
         }
-        ByteBuffer bb = ByteBuffer.allocate(width * height * (depth >>> 3));
-        bb.order(ByteOrder.nativeOrder());
-        fb = new Framebuffer(bb, width, height, depth, true);
+        compose = !"false".equals(System.getProperty("headless.compose"));
+    }
+
+    // allocated on first use, since a screen which isn't composed is rarely captured
+    protected Framebuffer getFramebuffer() {
+        if (fb == null) {
+            ByteBuffer bb = ByteBuffer.allocate(width * height * (depth >>> 3));
+            bb.order(ByteOrder.nativeOrder());
+            fb = new Framebuffer(bb, width, height, depth, true);
+        }
+        return fb;
     }
 
     @Override
@@ -117,16 +127,20 @@ class HeadlessScreen implements NativeScreen {
     public void uploadPixels(Buffer b,
                              int x, int y, int width, int height,
                              float alpha) {
-        fb.composePixels(b, x, y, width, height, alpha);
+        if (compose) {
+            getFramebuffer().composePixels(b, x, y, width, height, alpha);
+        }
     }
 
     @Override
     public void swapBuffers() {
-        fb.reset();
+        if (fb != null) {
+            fb.reset();
+        }
     }
 
     @Override
     public ByteBuffer getScreenCapture() {
-        return fb.getBuffer();
+        return getFramebuffer().getBuffer();
     }
 }
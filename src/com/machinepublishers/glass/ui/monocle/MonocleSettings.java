@@ -38,11 +38,13 @@ class MonocleSettings {
     final boolean traceEvents;
     final boolean traceEventsVerbose;
     final boolean tracePlatformConfig;
+    final boolean idlePulses;
 
     private MonocleSettings() {
         traceEventsVerbose = Boolean.getBoolean("monocle.input.traceEvents.verbose");
         traceEvents = traceEventsVerbose || Boolean.getBoolean("monocle.input.traceEvents");
         tracePlatformConfig = Boolean.getBoolean("monocle.platform.traceConfig");
+        idlePulses = Boolean.getBoolean("monocle.timer.idlePulses");
     }
 
 }
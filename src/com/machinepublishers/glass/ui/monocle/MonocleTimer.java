@@ -25,14 +25,39 @@
 
 package com.machinepublishers.glass.ui.monocle;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import com.sun.glass.ui.Timer;
+import com.sun.javafx.tk.Toolkit;
 
 /**
  * Monocle implementation class for Timer.
+ * <p>
+ * Timers share one scheduler thread. A tick is skipped while the toolkit is
+ * idle: no pulse is requested, no scene is waiting to be painted, no animation
+ * other than WebEngine's own pulse timer is running, and no WebKit timer is due
+ * within the period. Since this is checked on every tick, pulses resume within
+ * one period of anything changing. -Dmonocle.timer.idlePulses=true pulses
+ * regardless.
  */
 final class MonocleTimer extends Timer {
-    private static java.util.Timer timer;
-    private java.util.TimerTask task;
+    private static final ScheduledThreadPoolExecutor scheduler;
+
+    static {
+        scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "Monocle Timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    private ScheduledFuture<?> task;
 
     MonocleTimer(final Runnable runnable) {
         super(runnable);
@@ -46,20 +71,13 @@ final class MonocleTimer extends Timer {
         return 1000000;
     }
 
-    @Override protected long _start(final Runnable runnable, int period) {
-        if (timer == null) {
-            timer = new java.util.Timer(true);
-        }
-
-        task = new java.util.TimerTask() {
-
-            @Override
-            public void run() {
+    @Override protected synchronized long _start(final Runnable runnable, int period) {
+        final long delay = Math.max(1, period);
+        task = scheduler.scheduleWithFixedDelay(() -> {
+            if (MonocleSettings.settings.idlePulses || !Idle.isIdle(delay)) {
                 runnable.run();
             }
-        };
-
-        timer.schedule(task, 0, (long)period);
+        }, 0, delay, TimeUnit.MILLISECONDS);
         return 1; // need something non-zero to denote success.
     }
 
@@ -67,11 +85,109 @@ final class MonocleTimer extends Timer {
         throw new RuntimeException("vsync timer not supported");
     }
 
-    @Override protected void _stop(long timer) {
+    @Override protected synchronized void _stop(long timer) {
         if (task != null) {
-            task.cancel();
+            task.cancel(false);
             task = null;
         }
     }
-}
 
+    /**
+     * Reads the toolkit's own dirty state. The fields are internal, so if any
+     * of them can't be found the toolkit is never considered idle.
+     */
+    private static final class Idle {
+        private static final boolean supported;
+        private static Field nextPulseRequested;
+        private static Object paintCollector;
+        private static Method hasDirty;
+        private static Field receiversLength;
+        private static Field animationTimers;
+        private static Field animationTimersLength;
+        private static Object webPulseReceiver;
+        private static Method getTimer;
+        private static Field fireTime;
+        private static long observedFireTime;
+        private static long observedAt;
+
+        static {
+            boolean supportedTmp = false;
+            try {
+                nextPulseRequested = accessible(Class.forName("com.sun.javafx.tk.quantum.QuantumToolkit")
+                        .getDeclaredField("nextPulseRequested"));
+                Class<?> paintCollectorClass = Class.forName("com.sun.javafx.tk.quantum.PaintCollector");
+                Method getInstance = paintCollectorClass.getDeclaredMethod("getInstance");
+                getInstance.setAccessible(true);
+                paintCollector = getInstance.invoke(null);
+                hasDirty = paintCollectorClass.getDeclaredMethod("hasDirty");
+                hasDirty.setAccessible(true);
+                Class<?> masterTimer = Class.forName("com.sun.scenario.animation.AbstractMasterTimer");
+                receiversLength = accessible(masterTimer.getDeclaredField("receiversLength"));
+                animationTimers = accessible(masterTimer.getDeclaredField("animationTimers"));
+                animationTimersLength = accessible(masterTimer.getDeclaredField("animationTimersLength"));
+                // WebEngine keeps this animation running to fire WebKit's timers, which are checked directly
+                Object webPulseAnimation = accessible(Class.forName("javafx.scene.web.WebEngine$PulseTimer")
+                        .getDeclaredField("animation")).get(null);
+                webPulseReceiver = accessible(Class.forName("javafx.animation.AnimationTimer")
+                        .getDeclaredField("timerReceiver")).get(webPulseAnimation);
+                Class<?> webTimer = Class.forName("com.sun.webkit.Timer");
+                getTimer = webTimer.getDeclaredMethod("getTimer");
+                fireTime = accessible(webTimer.getDeclaredField("fireTime"));
+                supportedTmp = true;
+            } catch (Throwable t) {
+                supportedTmp = false;
+            }
+            supported = supportedTmp;
+        }
+
+        /**
+         * Some WebKit builds set the fire time to the interval rather than to the
+         * time it's due, in which case it's measured from when it was first seen,
+         * less a period since it may have been set up to one period earlier.
+         */
+        private static long due(long fireTime, long now, long periodMillis) {
+            if (Math.abs(fireTime - now) < TimeUnit.DAYS.toMillis(1)) {
+                return fireTime;
+            }
+            if (fireTime != observedFireTime) {
+                observedFireTime = fireTime;
+                observedAt = now - periodMillis;
+            }
+            return observedAt + fireTime;
+        }
+
+        private static Field accessible(Field field) {
+            field.setAccessible(true);
+            return field;
+        }
+
+        static boolean isIdle(long periodMillis) {
+            if (!supported) {
+                return false;
+            }
+            try {
+                Toolkit toolkit = Toolkit.getToolkit();
+                if (((AtomicBoolean) nextPulseRequested.get(toolkit)).get()
+                        || (Boolean) hasDirty.invoke(paintCollector)) {
+                    return false;
+                }
+                Object master = toolkit.getMasterTimer();
+                if (receiversLength.getInt(master) > 0) {
+                    return false;
+                }
+                int timers = animationTimersLength.getInt(master);
+                Object[] receivers = (Object[]) animationTimers.get(master);
+                for (int i = 0; i < timers; i++) {
+                    if (receivers[i] != webPulseReceiver) {
+                        return false;
+                    }
+                }
+                long next = fireTime.getLong(getTimer.invoke(null));
+                long now = System.currentTimeMillis();
+                return next <= 0 || due(next, now, periodMillis) > now + periodMillis;
+            } catch (Throwable t) {
+                return false;
+            }
+        }
+    }
+}
@@ -131,14 +131,13 @@ class RunnableProcessor implements Runnable {
     }
 
     void shutdown() {
-        synchronized (queue) {
-            queue.clear();
-            while (!activeRunLoops.isEmpty()) {
-                RunLoopControl control = activeRunLoops.pop();
-                control.active = false;
-            }
-            queue.notifyAll();
+        queue.clear();
+        while (!activeRunLoops.isEmpty()) {
+            RunLoopControl control = activeRunLoops.pop();
+            control.active = false;
         }
+        // wake the run loop so that it sees it's no longer active
+        queue.postRunnable(() -> { });
     }
 
     /** Posts a Runnable to the JavaFX event queue using the global
@@ -24,49 +24,97 @@
  */
 
 package com.machinepublishers.glass.ui.monocle;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
-import java.util.Arrays;
-
+/**
+ * Queue of Runnables posted to the JavaFX application thread.
+ * <p>
+ * Any thread may post, but only the application thread takes Runnables, so the
+ * queue is a linked list which producers append to by swapping its tail, without
+ * locking. The application thread parks while the queue is empty and is unparked
+ * by the next producer.
+ */
 class RunnableQueue {
 
-    private Runnable[] queue = new Runnable[32];
-    private int start;
-    private int count;
+    private static class Node {
+        Runnable runnable;
+        volatile Node next;
 
-    private int modulo(int index) {
-        if (index >= queue.length) {
-            index -= queue.length;
+        Node(Runnable runnable) {
+            this.runnable = runnable;
         }
-        return index;
     }
 
-    synchronized void postRunnable(Runnable r) {
-        if (count == queue.length) {
-            Runnable[] newQueue = new Runnable[(queue.length * 3) / 2];
-            System.arraycopy(queue, start, newQueue, 0, queue.length - start);
-            System.arraycopy(queue, 0, newQueue, queue.length - start, start);
-            queue = newQueue;
-            start = 0;
+    // written by producers
+    private final AtomicReference<Node> tail;
+    // everything up to and including this node is discarded by the consumer
+    private final AtomicReference<Node> cleared = new AtomicReference<>();
+    // read and written by the consumer only
+    private Node head;
+    private volatile Thread consumer;
+    private volatile boolean waiting;
+
+    RunnableQueue() {
+        head = new Node(null);
+        tail = new AtomicReference<>(head);
+    }
+
+    void postRunnable(Runnable r) {
+        Node node = new Node(r);
+        tail.getAndSet(node).next = node;
+        if (waiting) {
+            LockSupport.unpark(consumer);
         }
-        queue[modulo(start + count)] = r;
-        count ++;
-        notifyAll();
     }
 
-    synchronized Runnable getNextRunnable() throws InterruptedException {
-        while (count == 0) {
-            wait();
+    /**
+     * Takes the next Runnable, parking until one is posted. Must only be
+     * called by the application thread.
+     */
+    Runnable getNextRunnable() throws InterruptedException {
+        consumer = Thread.currentThread();
+        Runnable r;
+        while ((r = poll()) == null) {
+            waiting = true;
+            // a producer may have posted before seeing the flag
+            r = poll();
+            if (r != null) {
+                waiting = false;
+                break;
+            }
+            LockSupport.park(this);
+            waiting = false;
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
         }
-        Runnable r = queue[start];
-        queue[start] = null;
-        start = modulo(start + 1);
-        count --;
         return r;
     }
 
-    synchronized void clear() {
-        Arrays.fill(queue, null);
-        count = 0;
+    private Runnable poll() {
+        Node discard = cleared.getAndSet(null);
+        if (discard != null) {
+            discard.runnable = null;
+            head = discard;
+        }
+        // nodes already taken may be walked again after a clear
+        for (Node next; (next = head.next) != null;) {
+            head = next;
+            Runnable r = next.runnable;
+            next.runnable = null;
+            if (r != null) {
+                return r;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Discards the Runnables posted so far. May be called from any thread.
+     */
+    void clear() {
+        cleared.set(tail.get());
     }
 
 }
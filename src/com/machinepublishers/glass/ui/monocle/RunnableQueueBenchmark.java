@@ -0,0 +1,108 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2016 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.glass.ui.monocle;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures the latency from posting a Runnable to the JavaFX event queue until it runs,
+ * with several threads posting at once.
+ * <p>
+ * Usage: <code>java com.machinepublishers.glass.ui.monocle.RunnableQueueBenchmark [producers] [posts per producer]</code>
+ */
+class RunnableQueueBenchmark {
+  private static final int WARMUP = 20000;
+
+  public static void main(String[] args) throws InterruptedException {
+    final int producers = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+    final int posts = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+    run(producers, WARMUP);
+    long[] times = run(producers, posts);
+    report(producers + " producers", times);
+  }
+
+  private static long[] run(final int producers, final int posts) throws InterruptedException {
+    final RunnableQueue queue = new RunnableQueue();
+    final long[] times = new long[producers * posts];
+    final CountDownLatch done = new CountDownLatch(times.length);
+    final CountDownLatch start = new CountDownLatch(1);
+    Thread consumer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          while (done.getCount() > 0) {
+            queue.getNextRunnable().run();
+          }
+        } catch (InterruptedException e) {}
+      }
+    });
+    consumer.setDaemon(true);
+    consumer.start();
+    Thread[] threads = new Thread[producers];
+    for (int i = 0; i < producers; i++) {
+      final int offset = i * posts;
+      threads[i] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {}
+          for (int j = 0; j < posts; j++) {
+            final int index = offset + j;
+            final long posted = System.nanoTime();
+            queue.postRunnable(new Runnable() {
+              @Override
+              public void run() {
+                times[index] = System.nanoTime() - posted;
+                done.countDown();
+              }
+            });
+          }
+        }
+      });
+      threads[i].start();
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    done.await();
+    long elapsed = System.nanoTime() - begin;
+    System.out.println(new StringBuilder()
+        .append("Throughput:  ").append(times.length * 1000000000L / Math.max(1, elapsed)).append(" runnables/s"));
+    return times;
+  }
+
+  private static void report(String label, long[] times) {
+    long[] sorted = Arrays.copyOf(times, times.length);
+    Arrays.sort(sorted);
+    long total = 0;
+    for (long time : sorted) {
+      total += time;
+    }
+    System.out.println(new StringBuilder()
+        .append(label).append(":  n=").append(sorted.length)
+        .append("  mean=").append(micros(total / sorted.length))
+        .append("  p50=").append(micros(sorted[sorted.length / 2]))
+        .append("  p99=").append(micros(sorted[Math.min(sorted.length - 1, (int) (sorted.length * .99))]))
+        .append("  max=").append(micros(sorted[sorted.length - 1])));
+  }
+
+  private static String micros(long nanos) {
+    return (nanos / 1000) + " us";
+  }
+}
@@ -17,26 +17,101 @@
  */
 package com.machinepublishers.jbrowserdriver;
 
-import java.util.HashSet;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.sun.javafx.webkit.Accessor;
+import com.sun.webkit.Timer;
 
 import javafx.application.Platform;
 
-class AjaxListener implements Runnable {
+/**
+ * Decides when a page has finished loading, and then sets its status code.
+ * <p>
+ * A page is done once no resources are pending and it has been idle for {@link Settings#ajaxWait()},
+ * or sooner if the page itself has settled: no WebKit timers due soon and no recent DOM mutations.
+ * This is driven by the resource events of {@link HttpListener} instead of polling. Delayed checks and
+ * resource timeouts run on a scheduler shared by all windows.
+ */
+class AjaxListener {
   private static final long MAX_WAIT_DEFAULT = 15000;
-  private static final int IDLE_COUNT_TARGET = 3;
+  private static final int SETTLE_DIVISOR = 3;
+  private static final int MAX_DELAYS = 20;
+  private static final String quiescence = Util.randomPropertyName();
+  private static final ScheduledExecutorService scheduler;
+  private static final Field fireTime;
+
+  static {
+    Field fireTimeTmp = null;
+    try {
+      //WebKit runs all of its timers, including the page's, from this single fire time
+      fireTimeTmp = Timer.class.getDeclaredField("fireTime");
+      fireTimeTmp.setAccessible(true);
+    } catch (Throwable t) {
+      fireTimeTmp = null;
+    }
+    fireTime = fireTimeTmp;
+    ScheduledThreadPoolExecutor schedulerTmp = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.setName("jBrowserDriver page load scheduler");
+        return thread;
+      }
+    });
+    schedulerTmp.setRemoveOnCancelPolicy(true);
+    scheduler = schedulerTmp;
+  }
+
+  private final ContextItem contextItem;
+  private final Session session;
   private final AtomicBoolean started;
   private final AtomicInteger newStatusCode;
   private final StatusCode statusCode;
   private final Map<String, Long> resources;
   private final long timeoutMS;
+  private final AtomicReference<List<ResourceDelay>> delays = new AtomicReference<List<ResourceDelay>>(
+      Collections.<ResourceDelay> emptyList());
+  //the following are guarded by the status code
+  private final Map<String, Tracked> tracked = new HashMap<String, Tracked>();
+  private long round;
+  private long roundStart;
+  private long lastActivity;
+  private boolean active;
+  private ScheduledFuture<?> check;
+  private ScheduledFuture<?> timeout;
+
+  private static class Tracked {
+    private final String url;
+    private final long start;
+    private long end;
+    private boolean finished;
 
-  AjaxListener(final AtomicBoolean started, final AtomicInteger newStatusCode,
+    Tracked(String url, long start) {
+      this.url = url;
+      this.start = start;
+    }
+  }
+
+  AjaxListener(final ContextItem contextItem, final AtomicBoolean started, final AtomicInteger newStatusCode,
       final StatusCode statusCode,
       final Map<String, Long> resources, final long timeoutMS) {
+    this.contextItem = contextItem;
+    this.session = contextItem.session;
     this.started = started;
     this.newStatusCode = newStatusCode;
     this.statusCode = statusCode;
@@ -45,86 +120,227 @@ class AjaxListener implements Runnable {
   }
 
   /**
-   * {@inheritDoc}
+   * Starts waiting for the page to finish loading. Callers hold the lock of the status code.
    */
-  @Override
-  public void run() {
-    while (true) {
-      synchronized (statusCode) {
-        while (statusCode.get() != 0) {
-          try {
-            statusCode.wait();
-          } catch (InterruptedException e) {}
+  void start() {
+    ++round;
+    roundStart = System.currentTimeMillis();
+    lastActivity = roundStart;
+    active = false;
+    tracked.clear();
+    if (timeout != null) {
+      timeout.cancel(false);
+    }
+    final long thisRound = round;
+    timeout = scheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        synchronized (statusCode) {
+          if (thisRound == round && statusCode.get() == 0) {
+            done();
+          }
         }
       }
-      int size = 0;
-      final long start = System.currentTimeMillis();
-      long time = start;
-      final Settings settings = SettingsManager.settings();
-      final AtomicBoolean done = new AtomicBoolean();
-      Platform.runLater(new Runnable() {
+    }, timeoutMS, TimeUnit.MILLISECONDS);
+    //the action which started this round is still being performed on the JavaFX thread
+    check(0);
+  }
+
+  /**
+   * Records that a resource started loading. Callers hold the lock of the status code.
+   */
+  void resourceStarted(final String resource, final String url) {
+    activity();
+    tracked.put(resource, new Tracked(url, lastActivity));
+    final Long startedAt = resources.get(resource);
+    final Settings settings = session.settings();
+    if (startedAt != null && settings != null) {
+      scheduler.schedule(new Runnable() {
         @Override
         public void run() {
-          synchronized (done) {
-            done.set(true);
-            done.notifyAll();
-          }
-        }
-      });
-      synchronized (done) {
-        while (!done.get()) {
-          try {
-            done.wait();
-          } catch (InterruptedException e) {}
-        }
-      }
-      if (settings != null) {
-        final long sleepMS = Math.max(settings.ajaxWait() / IDLE_COUNT_TARGET, 0);
-        int idleCount = 0;
-        int idleCountTarget = sleepMS == 0 ? 1 : IDLE_COUNT_TARGET;
-        while (time - start < timeoutMS) {
-          try {
-            Thread.sleep(sleepMS);
-          } catch (InterruptedException e) {
-            return;
-          }
-          time = System.currentTimeMillis();
           synchronized (statusCode) {
-            if (Thread.interrupted()) {
-              return;
-            }
-            final Set<String> remove = new HashSet<String>();
-            for (Map.Entry<String, Long> entry : resources.entrySet()) {
-              if (time - entry.getValue() > settings.ajaxResourceTimeout()) {
-                remove.add(entry.getKey());
-              }
+            if (startedAt.equals(resources.get(resource))) {
+              resources.remove(resource);
+              resourceFinished(resource, false);
             }
-            for (String key : remove) {
-              resources.remove(key);
-            }
-            size = resources.size();
           }
-          if (size == 0) {
-            ++idleCount;
-          } else {
-            idleCount = 0;
+        }
+      }, settings.ajaxResourceTimeout(), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Records that a resource finished loading or failed, or is no longer waited for.
+   * Callers hold the lock of the status code.
+   */
+  void resourceFinished(String resource, boolean finished) {
+    activity();
+    Tracked cur = tracked.get(resource);
+    if (cur != null && cur.end == 0) {
+      cur.end = lastActivity;
+      cur.finished = finished;
+    }
+    if (statusCode.get() == 0 && resources.isEmpty()) {
+      check(0);
+    }
+  }
+
+  private void activity() {
+    lastActivity = System.currentTimeMillis();
+    active = true;
+  }
+
+  private void check(long delayMS) {
+    if (check != null) {
+      check.cancel(false);
+    }
+    final long thisRound = round;
+    check = scheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        Platform.runLater(new Runnable() {
+          @Override
+          public void run() {
+            idle(thisRound);
           }
-          if (idleCount == idleCountTarget) {
-            break;
+        });
+      }
+    }, delayMS, TimeUnit.MILLISECONDS);
+  }
+
+  private void idle(long thisRound) {
+    synchronized (statusCode) {
+      final Settings settings = session.settings();
+      if (thisRound != round || statusCode.get() != 0 || !resources.isEmpty()) {
+        return;
+      }
+      long wait = 0;
+      if (settings != null) {
+        final long now = System.currentTimeMillis();
+        wait = Math.max(0, settings.ajaxWait() - (now - lastActivity));
+        if (active) {
+          long settled = settled(settings);
+          if (settled > -1) {
+            wait = Math.min(wait, settled);
           }
         }
       }
-      synchronized (statusCode) {
-        if (Thread.interrupted()) {
-          return;
-        }
-        int newStatusCodeVal = newStatusCode.getAndSet(0);
-        newStatusCodeVal = newStatusCodeVal <= 0 ? (started.get() ? 0 : 200) : newStatusCodeVal;
-        resources.clear();
-        StatusMonitor.instance().clear();
-        statusCode.set(newStatusCodeVal);
-        statusCode.notifyAll();
+      if (wait > 0) {
+        check(wait);
+      } else {
+        done();
+      }
+    }
+  }
+
+  /**
+   * @return Milliseconds until the page has settled, or <code>-1</code> if it's unknown
+   *         or the page is still busy
+   */
+  private long settled(Settings settings) {
+    if (timerPending(settings.ajaxWait())) {
+      return -1;
+    }
+    try {
+      Object result = contextItem.engine.get().executeScript(new StringBuilder()
+          .append("typeof window.").append(quiescence).append("==='function'?window.")
+          .append(quiescence).append("(").append(settings.ajaxWait() / SETTLE_DIVISOR).append("):-1;")
+          .toString());
+      if (result instanceof Number) {
+        return ((Number) result).longValue();
+      }
+    } catch (Throwable t) {}
+    return -1;
+  }
+
+  /**
+   * @return Whether WebKit has a timer due within the AJAX wait, or it can't be determined
+   */
+  private static boolean timerPending(long ajaxWait) {
+    if (fireTime == null) {
+      return true;
+    }
+    try {
+      long next = fireTime.getLong(Timer.getTimer());
+      return next > 0 && next - System.currentTimeMillis() <= ajaxWait;
+    } catch (Throwable t) {
+      return true;
+    }
+  }
+
+  private void done() {
+    if (check != null) {
+      check.cancel(false);
+    }
+    int newStatusCodeVal = newStatusCode.getAndSet(0);
+    newStatusCodeVal = newStatusCodeVal <= 0 ? (started.get() ? 0 : 200) : newStatusCodeVal;
+    report();
+    resources.clear();
+    session.statusMonitor.clear();
+    statusCode.set(newStatusCodeVal);
+    statusCode.notifyAll();
+    if (newStatusCodeVal == 0) {
+      //the page started loading but hasn't finished
+      start();
+    } else if (timeout != null) {
+      timeout.cancel(false);
+    }
+  }
+
+  /**
+   * @return The requests which finished last, or were still pending, when the page last finished loading
+   */
+  List<ResourceDelay> delays() {
+    return delays.get();
+  }
+
+  private void report() {
+    final long now = System.currentTimeMillis();
+    List<Tracked> list = new ArrayList<Tracked>(tracked.values());
+    for (Tracked cur : list) {
+      if (cur.end == 0) {
+        cur.end = now;
+      }
+    }
+    Collections.sort(list, new Comparator<Tracked>() {
+      @Override
+      public int compare(Tracked t1, Tracked t2) {
+        return Long.compare(t2.end, t1.end);
       }
+    });
+    List<ResourceDelay> report = new ArrayList<ResourceDelay>();
+    for (int i = 0; i < list.size() && i < MAX_DELAYS; i++) {
+      Tracked cur = list.get(i);
+      report.add(new ResourceDelay(cur.url, cur.start - roundStart, cur.end - cur.start, cur.finished));
+    }
+    delays.set(Collections.unmodifiableList(report));
+    final Settings settings = session.settings();
+    if (settings != null && settings.logTrace() && !report.isEmpty()) {
+      session.logs.trace(new StringBuilder().append("Page load took ").append(now - roundStart)
+          .append("ms. Last requests: ").append(report).toString());
+    }
+  }
+
+  /**
+   * Makes the document of the frame report how long ago its DOM last changed. Pending timers are
+   * read from WebKit instead, so that none of the page's own globals are replaced.
+   */
+  void install(long frame) {
+    final Settings settings = session.settings();
+    if (settings == null || !settings.javascript()) {
+      return;
     }
+    try {
+      Accessor.getPageFor(contextItem.engine.get()).executeScript(frame, new StringBuilder()
+          .append("(function(){")
+          .append("if(window.").append(quiescence).append("){return;}")
+          .append("var last=Date.now();")
+          .append("try{new MutationObserver(function(){last=Date.now();}).observe(document,")
+          .append("{childList:true,subtree:true,attributes:true,characterData:true});}catch(ex){}")
+          .append("Object.defineProperty(window,'").append(quiescence).append("',{value:function(settle){")
+          .append("  return Math.max(0,settle-(Date.now()-last));")
+          .append("}});")
+          .append("})();").toString());
+    } catch (Throwable t) {}
   }
-}
\ No newline at end of file
+}
@@ -50,6 +50,8 @@ public class App extends Application {
   private int width;
   private int height;
   private boolean headless;
+  private Stage started;
+  private WebView startedView;
 
   /**
    * Internal use only.
@@ -80,6 +82,18 @@ public class App extends Application {
     }
   }
 
+  /**
+   * @return The stage created by {@link #start()}, which unlike {@link #getStage()}
+   *         can't be the stage of another window started at the same time
+   */
+  Stage stage() {
+    return started;
+  }
+
+  WebView view() {
+    return startedView;
+  }
+
   void init(int width, int height, boolean headless) {
     this.width = width;
     this.height = height;
@@ -141,6 +155,8 @@ public class App extends Application {
     stage.sizeToScene();
     engine.titleProperty().addListener(new TitleListener(stage));
     stage.show();
+    started = stage;
+    startedView = view;
     synchronized (lock) {
       myStage = stage;
       myView = view;
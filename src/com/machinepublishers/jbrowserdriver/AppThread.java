@@ -35,35 +35,24 @@ class AppThread {
   }
 
   private static class Runner<T> implements Runnable {
-    private static final int MAX_DELAY = 500;
     private final Sync<T> action;
     private final StatusCode statusCode;
+    private final Session session;
     private final AtomicBoolean done;
     private final AtomicReference<T> returned;
-    private final int delay;
     private final AtomicBoolean cancel;
     private final AtomicReference<Throwable> failure;
 
     public Runner(Sync<T> action, StatusCode statusCode) {
       this.action = action;
       this.statusCode = statusCode;
+      this.session = statusCode.session() == null ? Session.current() : statusCode.session();
       this.done = new AtomicBoolean();
       this.returned = new AtomicReference<T>();
-      this.delay = 1;
       this.cancel = new AtomicBoolean();
       this.failure = new AtomicReference<Throwable>();
     }
 
-    public Runner(Runner other) {
-      this.action = other.action;
-      this.statusCode = other.statusCode;
-      this.done = other.done;
-      this.returned = other.returned;
-      this.delay = Math.min(MAX_DELAY, other.delay * 2);
-      this.cancel = other.cancel;
-      this.failure = other.failure;
-    }
-
     /**
      * {@inheritDoc}
      */
@@ -72,26 +61,20 @@ class AppThread {
       if (!cancel.get()) {
         synchronized (statusCode) {
           if (statusCode.get() == 0) {
-            final Runner newRunner = new Runner(this);
-            new Thread(new Runnable() {
-              @Override
-              public void run() {
-                try {
-                  Thread.sleep(delay);
-                } catch (InterruptedException e) {}
-                Platform.runLater(newRunner);
-              }
-            }).start();
+            //runs again once the page is done loading
+            statusCode.park(this);
           } else {
             if (statusCode.get() > 299) {
-              LogsServer.instance().trace("Performing browser action, but HTTP status is " + statusCode.get() + ".");
+              session.logs.trace("Performing browser action, but HTTP status is " + statusCode.get() + ".");
             }
             T result = null;
+            Session previous = Session.enter(session);
             try {
               result = action.perform();
             } catch (Throwable t) {
               failure.set(t);
             } finally {
+              Session.enter(previous);
               synchronized (done) {
                 returned.set(result);
                 done.set(true);
@@ -148,7 +131,15 @@ class AppThread {
       final Sync<T> action) {
     try {
       if ((boolean) Platform.isFxApplicationThread()) {
-        return action.perform();
+        if (statusCode.session() == null) {
+          return action.perform();
+        }
+        Session previous = Session.enter(statusCode.session());
+        try {
+          return action.perform();
+        } finally {
+          Session.enter(previous);
+        }
       }
       final Runner<T> runner = new Runner<T>(action, statusCode);
       synchronized (runner.done) {
@@ -0,0 +1,342 @@
+/*
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2016 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.WebDriverException;
+
+/**
+ * A list of element queries which the browser performs together, in one task on its UI thread,
+ * and answers in one round trip. Useful when reading many properties from many elements.
+ * <p>
+ * Each operation returns a {@link Ref} to its result, which later operations may use as their target.
+ * When a target is a list of elements, the operation is applied to each of them and its result is a list
+ * in the same order. Operations without a target apply to the document, or to the element on which the
+ * batch is executed.
+ * <p>
+ * Elements are found as the page is when the batch runs, without the implicit wait (see
+ * {@link org.openqa.selenium.WebDriver.Timeouts#implicitlyWait(long, java.util.concurrent.TimeUnit)}).
+ * When no element matches {@link #findElement(By)}, its result is <code>null</code> rather than the whole
+ * batch failing, and operations targeting it have <code>null</code> results too.
+ * <p>
+ * For example:
+ *
+ * <pre>
+ * Batch batch = new Batch();
+ * Batch.Ref links = batch.findElements(By.tagName("a"));
+ * Batch.Ref hrefs = batch.getAttribute(links, "href");
+ * Batch.Ref texts = batch.getText(links);
+ * Batch.Results results = driver.batch(batch);
+ * List&lt;String&gt; hrefList = results.get(hrefs);
+ * </pre>
+ *
+ * @see BatchExecutor
+ */
+public class Batch implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private static final int ROOT = -1;
+  private final List<Operation> operations = new ArrayList<Operation>();
+
+  private static enum Type {
+    FIND_ELEMENT, FIND_ELEMENTS, GET_TEXT, GET_TAG_NAME, GET_ATTRIBUTE, GET_CSS_VALUE,
+    GET_LOCATION, GET_SIZE, GET_RECT, IS_DISPLAYED, IS_ENABLED, IS_SELECTED
+  }
+
+  private static class Operation implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final Type type;
+    private final int target;
+    private final By by;
+    private final String name;
+
+    Operation(Type type, int target, By by, String name) {
+      this.type = type;
+      this.target = target;
+      this.by = by;
+      this.name = name;
+    }
+  }
+
+  /**
+   * Reference to the result of an operation in a batch.
+   */
+  public static class Ref implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final Batch batch;
+    private final int index;
+
+    private Ref(Batch batch, int index) {
+      this.batch = batch;
+      this.index = index;
+    }
+  }
+
+  /**
+   * Results of each operation in a batch. Elements are returned as {@link org.openqa.selenium.WebElement}s and
+   * geometry as Selenium {@link org.openqa.selenium.Point}s, {@link org.openqa.selenium.Dimension}s, and
+   * {@link org.openqa.selenium.Rectangle}s.
+   */
+  public static class Results {
+    private final Batch batch;
+    private final List<Object> results;
+
+    Results(Batch batch, List<Object> results, JBrowserDriver driver, SocketLock lock) {
+      this.batch = batch;
+      List<Object> converted = new ArrayList<Object>(results.size());
+      for (Object result : results) {
+        converted.add(convert(Element.constructObject(result, driver, lock)));
+      }
+      this.results = Collections.unmodifiableList(converted);
+    }
+
+    private static Object convert(Object obj) {
+      if (obj instanceof Point) {
+        return ((Point) obj).toSelenium();
+      }
+      if (obj instanceof Dimension) {
+        return ((Dimension) obj).toSelenium();
+      }
+      if (obj instanceof Rectangle) {
+        return ((Rectangle) obj).toSelenium();
+      }
+      if (obj instanceof List<?>) {
+        List<Object> list = new ArrayList<Object>();
+        for (Object item : (List<?>) obj) {
+          list.add(convert(item));
+        }
+        return list;
+      }
+      return obj;
+    }
+
+    /**
+     * @param ref
+     *          Reference returned when the operation was added to the batch
+     * @return The result of the operation
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Ref ref) {
+      if (ref.batch != batch) {
+        throw new IllegalArgumentException("Reference belongs to a different batch.");
+      }
+      return (T) results.get(ref.index);
+    }
+
+    /**
+     * @return The results of every operation, in the order they were added
+     */
+    public List<Object> list() {
+      return results;
+    }
+  }
+
+  private Ref add(Type type, Ref target, By by, String name) {
+    if (target != null && target.batch != this) {
+      throw new IllegalArgumentException("Reference belongs to a different batch.");
+    }
+    operations.add(new Operation(type, target == null ? ROOT : target.index, by, name));
+    return new Ref(this, operations.size() - 1);
+  }
+
+  /**
+   * @param by
+   * @return Reference to the first matching element, whose result is <code>null</code> if there's none
+   */
+  public Ref findElement(By by) {
+    return add(Type.FIND_ELEMENT, null, by, null);
+  }
+
+  /**
+   * @param target
+   *          Element(s) to search within
+   * @param by
+   * @return Reference to the first matching element, whose result is <code>null</code> if there's none
+   */
+  public Ref findElement(Ref target, By by) {
+    return add(Type.FIND_ELEMENT, target, by, null);
+  }
+
+  /**
+   * @param by
+   * @return Reference to the list of matching elements
+   */
+  public Ref findElements(By by) {
+    return add(Type.FIND_ELEMENTS, null, by, null);
+  }
+
+  /**
+   * @param target
+   *          Element(s) to search within
+   * @param by
+   * @return Reference to the list of matching elements
+   */
+  public Ref findElements(Ref target, By by) {
+    return add(Type.FIND_ELEMENTS, target, by, null);
+  }
+
+  /**
+   * @param target
+   * @return Reference to the visible text
+   */
+  public Ref getText(Ref target) {
+    return add(Type.GET_TEXT, target, null, null);
+  }
+
+  /**
+   * @param target
+   * @return Reference to the tag name
+   */
+  public Ref getTagName(Ref target) {
+    return add(Type.GET_TAG_NAME, target, null, null);
+  }
+
+  /**
+   * @param target
+   * @param attrName
+   * @return Reference to the attribute value
+   */
+  public Ref getAttribute(Ref target, String attrName) {
+    return add(Type.GET_ATTRIBUTE, target, null, attrName);
+  }
+
+  /**
+   * @param target
+   * @param propertyName
+   * @return Reference to the computed CSS value
+   */
+  public Ref getCssValue(Ref target, String propertyName) {
+    return add(Type.GET_CSS_VALUE, target, null, propertyName);
+  }
+
+  /**
+   * @param target
+   * @return Reference to the location
+   */
+  public Ref getLocation(Ref target) {
+    return add(Type.GET_LOCATION, target, null, null);
+  }
+
+  /**
+   * @param target
+   * @return Reference to the size
+   */
+  public Ref getSize(Ref target) {
+    return add(Type.GET_SIZE, target, null, null);
+  }
+
+  /**
+   * @param target
+   * @return Reference to the bounding rectangle
+   */
+  public Ref getRect(Ref target) {
+    return add(Type.GET_RECT, target, null, null);
+  }
+
+  /**
+   * @param target
+   * @return Reference to whether the element is displayed
+   */
+  public Ref isDisplayed(Ref target) {
+    return add(Type.IS_DISPLAYED, target, null, null);
+  }
+
+  /**
+   * @param target
+   * @return Reference to whether the element is enabled
+   */
+  public Ref isEnabled(Ref target) {
+    return add(Type.IS_ENABLED, target, null, null);
+  }
+
+  /**
+   * @param target
+   * @return Reference to whether the element is selected
+   */
+  public Ref isSelected(Ref target) {
+    return add(Type.IS_SELECTED, target, null, null);
+  }
+
+  /**
+   * Performs every operation against the given root. Must be called on the UI thread.
+   */
+  List<Object> perform(ElementServer root) {
+    List<Object> results = new ArrayList<Object>(operations.size());
+    for (int i = 0; i < operations.size(); i++) {
+      Operation operation = operations.get(i);
+      Object target = operation.target == ROOT ? root : results.get(operation.target);
+      results.add(perform(operation, target, i));
+    }
+    return results;
+  }
+
+  private static Object perform(Operation operation, Object target, int index) {
+    if (target instanceof List<?>) {
+      List<Object> list = new ArrayList<Object>();
+      for (Object item : (List<?>) target) {
+        list.add(perform(operation, item, index));
+      }
+      return list;
+    }
+    if (target == null) {
+      return null;
+    }
+    if (!(target instanceof ElementServer)) {
+      throw new WebDriverException(new StringBuilder()
+          .append("Batch operation ").append(index).append(" does not target an element.").toString());
+    }
+    ElementServer element = (ElementServer) target;
+    switch (operation.type) {
+      case FIND_ELEMENT:
+        try {
+          return element.findElement(operation.by);
+        } catch (NoSuchElementException e) {
+          return null;
+        }
+      case FIND_ELEMENTS:
+        return element.findElements(operation.by);
+      case GET_TEXT:
+        return element.getText();
+      case GET_TAG_NAME:
+        return element.getTagName();
+      case GET_ATTRIBUTE:
+        return element.getAttribute(operation.name);
+      case GET_CSS_VALUE:
+        return element.getCssValue(operation.name);
+      case GET_LOCATION:
+        return element.remoteGetLocation();
+      case GET_SIZE:
+        return element.remoteGetSize();
+      case GET_RECT:
+        return element.remoteGetRect();
+      case IS_DISPLAYED:
+        return element.isDisplayed();
+      case IS_ENABLED:
+        return element.isEnabled();
+      case IS_SELECTED:
+        return element.isSelected();
+      default:
+        throw new WebDriverException("Unsupported batch operation: " + operation.type);
+    }
+  }
+}
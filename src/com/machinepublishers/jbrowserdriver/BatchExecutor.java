@@ -0,0 +1,33 @@
+/*
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2016 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+/**
+ * Implemented by {@link JBrowserDriver} and by the {@link org.openqa.selenium.WebElement}s it returns,
+ * which can be cast to this interface.
+ */
+public interface BatchExecutor {
+  /**
+   * Performs every operation of the batch in one round trip to the browser.
+   * Operations without a target apply to this driver's current document, or to this element.
+   * 
+   * @param batch
+   * @return Results of each operation
+   */
+  Batch.Results batch(Batch batch);
+}
@@ -0,0 +1,65 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2016 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.cache.CacheResponseStatus;
+
+/**
+ * Counts how the web cache of this browser process is used.
+ */
+class CacheMonitor {
+  private static final AtomicLong hits = new AtomicLong();
+  private static final AtomicLong misses = new AtomicLong();
+  private static final AtomicLong validated = new AtomicLong();
+  private static final AtomicLong bytesServed = new AtomicLong();
+  private static final AtomicLong evictions = new AtomicLong();
+  private static final AtomicLong rejected = new AtomicLong();
+
+  /**
+   * @param status
+   *          How the cache answered the request, or <code>null</code> if it didn't
+   */
+  static void responded(CacheResponseStatus status, HttpResponse response) {
+    if (status == CacheResponseStatus.CACHE_MISS) {
+      misses.incrementAndGet();
+    } else if (status == CacheResponseStatus.CACHE_HIT || status == CacheResponseStatus.VALIDATED) {
+      (status == CacheResponseStatus.CACHE_HIT ? hits : validated).incrementAndGet();
+      HttpEntity entity = response == null ? null : response.getEntity();
+      if (entity != null && entity.getContentLength() > 0) {
+        bytesServed.addAndGet(entity.getContentLength());
+      }
+    }
+  }
+
+  static void evicted() {
+    evictions.incrementAndGet();
+  }
+
+  static void rejected() {
+    rejected.incrementAndGet();
+  }
+
+  static CacheStats stats() {
+    return new CacheStats(hits.get(), misses.get(), validated.get(),
+        bytesServed.get(), evictions.get(), rejected.get());
+  }
+}
@@ -0,0 +1,132 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2016 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.http.Header;
+import org.apache.http.client.cache.HttpCacheEntry;
+
+/**
+ * Decides which web cache entries are kept in memory (see {@link Settings.Builder#cacheMemory(long)}).
+ * <p>
+ * {@link #SEGMENTED_LRU} evicts the least recently used entries, favoring those which were looked up more than once.
+ * The other policies rank each entry by its {@link #value(HttpCacheEntry, long, long)} and evict the entry
+ * ranked lowest. Ranks age: an entry's rank is its value plus the rank of the last entry evicted before it was
+ * last used, so entries which are no longer used are eventually evicted however valuable they were.
+ * <p>
+ * Subclasses can override {@link #admit(HttpCacheEntry)} and {@link #value(HttpCacheEntry, long, long)}.
+ * Policies are sent to the browser process, so subclasses must be serializable and on its classpath.
+ */
+public class CachePolicy implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Segmented LRU: entries start in a probationary segment and are protected once they're looked up again.
+   * This is the default.
+   */
+  public static final CachePolicy SEGMENTED_LRU = new CachePolicy(true, Collections.<String, Double> emptyMap());
+
+  /**
+   * Size-aware LFU: entries are valued by their number of uses per byte, so that small resources
+   * which are used often are favored over large ones which are used rarely.
+   */
+  public static final CachePolicy SIZE_AWARE_LFU = new CachePolicy(false, Collections.<String, Double> emptyMap());
+
+  private final boolean segmented;
+  private final Map<String, Double> contentTypes;
+
+  private CachePolicy(boolean segmented, Map<String, Double> contentTypes) {
+    this.segmented = segmented;
+    this.contentTypes = contentTypes;
+  }
+
+  /**
+   * Size-aware LFU (see {@link #SIZE_AWARE_LFU}), with the value of entries multiplied by a weight
+   * for their content type.
+   * 
+   * @param contentTypes
+   *          Weights by content type prefix, such as <code>image/</code> or <code>text/css</code>,
+   *          matched in iteration order. Content types not matched have a weight of 1, and
+   *          entries with a weight of zero or less aren't admitted.
+   */
+  public CachePolicy(Map<String, Double> contentTypes) {
+    this(false, new LinkedHashMap<String, Double>(contentTypes));
+  }
+
+  /**
+   * Size-aware LFU (see {@link #SIZE_AWARE_LFU}), for subclasses to change.
+   */
+  protected CachePolicy() {
+    this(false, Collections.<String, Double> emptyMap());
+  }
+
+  /**
+   * @param entry
+   * @return Whether to keep an entry in memory when it's stored or first looked up.
+   */
+  public boolean admit(HttpCacheEntry entry) {
+    return weight(entry) > 0;
+  }
+
+  /**
+   * Not used by {@link #SEGMENTED_LRU}.
+   * 
+   * @param entry
+   * @param uses
+   *          Number of times the entry was stored or looked up since it was kept in memory
+   * @param bytes
+   *          Size of the entry in memory
+   * @return Value of keeping an entry in memory. Entries of lower value are evicted first.
+   */
+  public double value(HttpCacheEntry entry, long uses, long bytes) {
+    return weight(entry) * uses / bytes;
+  }
+
+  /**
+   * @return The built-in policy of a name used by the <code>jbd.cachepolicy</code> setting,
+   *         or <code>null</code> if there's none
+   */
+  static CachePolicy parse(String name) {
+    if ("segmentedlru".equalsIgnoreCase(name)) {
+      return SEGMENTED_LRU;
+    }
+    if ("sizeawarelfu".equalsIgnoreCase(name)) {
+      return SIZE_AWARE_LFU;
+    }
+    return null;
+  }
+
+  boolean segmented() {
+    return segmented;
+  }
+
+  private double weight(HttpCacheEntry entry) {
+    Header header = entry.getFirstHeader("Content-Type");
+    String contentType = header == null || header.getValue() == null ? "" : header.getValue().toLowerCase();
+    for (Map.Entry<String, Double> weight : contentTypes.entrySet()) {
+      if (contentType.startsWith(weight.getKey().toLowerCase())) {
+        return weight.getValue();
+      }
+    }
+    return 1;
+  }
+}
@@ -0,0 +1,111 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2016 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.Serializable;
+
+/**
+ * Statistics about the web cache of browser processes.
+ * 
+ * @see JBrowserDriver#cacheStats()
+ * @see JBrowserDriver#totalCacheStats()
+ */
+public class CacheStats implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private final long hits;
+  private final long misses;
+  private final long validated;
+  private final long bytesServed;
+  private final long evictions;
+  private final long rejected;
+
+  CacheStats(long hits, long misses, long validated, long bytesServed, long evictions, long rejected) {
+    this.hits = hits;
+    this.misses = misses;
+    this.validated = validated;
+    this.bytesServed = bytesServed;
+    this.evictions = evictions;
+    this.rejected = rejected;
+  }
+
+  CacheStats add(CacheStats other) {
+    return new CacheStats(hits + other.hits, misses + other.misses, validated + other.validated,
+        bytesServed + other.bytesServed, evictions + other.evictions, rejected + other.rejected);
+  }
+
+  /**
+   * @return Number of responses served from the cache without contacting the server.
+   */
+  public long hits() {
+    return hits;
+  }
+
+  /**
+   * @return Number of cacheable requests which the cache couldn't answer.
+   */
+  public long misses() {
+    return misses;
+  }
+
+  /**
+   * @return Number of responses served from the cache after the server confirmed they're still valid.
+   */
+  public long validated() {
+    return validated;
+  }
+
+  /**
+   * @return Total size in bytes of the response bodies served from the cache, including validated ones.
+   */
+  public long bytesServed() {
+    return bytesServed;
+  }
+
+  /**
+   * @return Number of entries evicted from memory to stay within {@link Settings.Builder#cacheMemory(long)}.
+   */
+  public long evictions() {
+    return evictions;
+  }
+
+  /**
+   * @return Number of entries not kept in memory because the {@link CachePolicy} didn't admit them.
+   */
+  public long rejected() {
+    return rejected;
+  }
+
+  /**
+   * @return Fraction of cacheable requests served from the cache, including validated ones.
+   */
+  public double hitRatio() {
+    long requests = hits + validated + misses;
+    return requests == 0 ? 0 : (hits + validated) / (double) requests;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return new StringBuilder().append("hits=").append(hits).append(", misses=").append(misses)
+        .append(", validated=").append(validated).append(", hitRatio=").append(String.format("%.3f", hitRatio()))
+        .append(", bytesServed=").append(bytesServed).append(", evictions=").append(evictions)
+        .append(", rejected=").append(rejected).toString();
+  }
+}
@@ -0,0 +1,129 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2016 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.zeroturnaround.exec.ProcessExecutor;
+
+/**
+ * Archives of the classes loaded by browser processes (AppCDS), kept alongside the cached classpath.
+ * <p>
+ * When there's no archive for a Java binary and classpath, the next browser process records one when it exits
+ * and the archive is moved into place once the process has ended. One process records at a time.
+ * Archives are only used with Java binaries of version 13 or later, which is checked once per binary.
+ */
+class ClassDataSharing {
+  private static final String ARCHIVE_OPTION = "-XX:SharedArchiveFile=";
+  private static final String RECORD_OPTION = "-XX:ArchiveClassesAtExit=";
+  private static final String RECORDING = "classes.jsa";
+  private static final Map<File, File> recordings = new HashMap<File, File>();
+  private static final Map<String, Boolean> supported = new HashMap<String, Boolean>();
+  private static final Pattern version = Pattern.compile("version \"(?:1\\.)?([0-9]+)");
+
+  /**
+   * @param tmpDir
+   *          Temp directory of the process, which holds the archive while it's recorded
+   * @return Java options for the process, or an empty list if class data sharing isn't used
+   */
+  static List<String> options(Settings settings, String javaBinary, File classpathDir, List<String> classpathArgs,
+      File tmpDir) {
+    List<String> options = new ArrayList<String>();
+    if (settings.classDataSharing() && classpathDir != null && !classpathArgs.isEmpty()
+        && supported(javaBinary)) {
+      File archive = new File(classpathDir, new StringBuilder().append("classes-")
+          .append(DigestUtils.sha256Hex(javaBinary + "\n" + classpathArgs.get(classpathArgs.size() - 1)))
+          .append(".jsa").toString());
+      if (archive.isFile()) {
+        options.add(ARCHIVE_OPTION + archive.getAbsolutePath());
+      } else {
+        synchronized (recordings) {
+          if (!recordings.containsValue(archive)) {
+            recordings.put(tmpDir, archive);
+            options.add(RECORD_OPTION + new File(tmpDir, RECORDING).getAbsolutePath());
+          }
+        }
+      }
+    }
+    return options;
+  }
+
+  /**
+   * @return Whether the Java binary is version 13 or later, which is needed to record archives at exit
+   */
+  private static boolean supported(String javaBinary) {
+    synchronized (supported) {
+      Boolean cur = supported.get(javaBinary);
+      if (cur == null) {
+        cur = false;
+        try {
+          Matcher matcher = version.matcher(new ProcessExecutor(javaBinary, "-version")
+              .redirectErrorStream(true).readOutput(true).timeout(30, TimeUnit.SECONDS).execute().outputUTF8());
+          cur = matcher.find() && Integer.parseInt(matcher.group(1)) >= 13;
+        } catch (Throwable t) {}
+        supported.put(javaBinary, cur);
+      }
+      return cur;
+    }
+  }
+
+  /**
+   * @return How the options share class data, for logging
+   */
+  static String mode(List<String> options) {
+    for (String option : options) {
+      if (option.startsWith(ARCHIVE_OPTION)) {
+        return "on";
+      }
+      if (option.startsWith(RECORD_OPTION)) {
+        return "recording";
+      }
+    }
+    return "off";
+  }
+
+  /**
+   * Moves the archive recorded by an ended process into place.
+   */
+  static void ended(File tmpDir) {
+    File archive;
+    synchronized (recordings) {
+      archive = recordings.remove(tmpDir);
+    }
+    File recording = new File(tmpDir, RECORDING);
+    if (archive != null && recording.length() > 0) {
+      File staged = new File(archive.getParentFile(), archive.getName() + "." + Util.randomFileName());
+      try {
+        Files.move(recording.toPath(), staged.toPath());
+        Files.move(staged.toPath(), archive.toPath(), StandardCopyOption.ATOMIC_MOVE);
+      } catch (Throwable t) {
+        staged.delete();
+      }
+    }
+  }
+}
@@ -0,0 +1,317 @@
+/*
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2016 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.Socket;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parent side of the binary command protocol. Provides implementations of the remote interfaces
+ * which send commands over the browser connection instead of through RMI.
+ */
+class CommandClient implements CommandProtocol.Handles {
+  private final SocketFactory socketFactory;
+  private final JBrowserDriverRemote rmi;
+  private final int driverHandle;
+  private final ConcurrentLinkedQueue<Channel> channels = new ConcurrentLinkedQueue<Channel>();
+  private final ReferenceQueue<Object> collected = new ReferenceQueue<Object>();
+  private final Map<Reference<?>, Integer> references = new HashMap<Reference<?>, Integer>();
+  private final Map<Integer, CompletableFuture<Object>> pending = new HashMap<Integer, CompletableFuture<Object>>();
+  private final AtomicInteger callIds = new AtomicInteger();
+  private Socket asyncSocket;
+
+  /**
+   * @param socketFactory
+   *          Factory holding the connection to the browser process
+   * @param rmi
+   *          Used for calls which return other remote objects
+   * @param driverHandle
+   *          Handle of the driver of this browser's session
+   */
+  CommandClient(SocketFactory socketFactory, JBrowserDriverRemote rmi, int driverHandle) {
+    this.socketFactory = socketFactory;
+    this.rmi = rmi;
+    this.driverHandle = driverHandle;
+  }
+
+  JBrowserDriverRemote driver() {
+    return (JBrowserDriverRemote) Proxy.newProxyInstance(JBrowserDriverRemote.class.getClassLoader(),
+        new Class<?>[] { JBrowserDriverRemote.class }, new Invoker(driverHandle));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ElementRemote element(int handle) {
+    ElementRemote element = (ElementRemote) Proxy.newProxyInstance(ElementRemote.class.getClassLoader(),
+        new Class<?>[] { ElementRemote.class }, new Invoker(handle));
+    synchronized (references) {
+      references.put(new WeakReference<Object>(element, collected), handle);
+    }
+    return element;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int handle(ElementRemote element) {
+    return ((Invoker) Proxy.getInvocationHandler(element)).handle;
+  }
+
+  private Object call(int handle, Method method, Object[] args) throws Throwable {
+    //looked up before anything is written, so that a method without a command can't leave a partial message
+    final short opcode = CommandProtocol.opcode(
+        handle <= CommandProtocol.DRIVER ? CommandProtocol.DRIVER_METHODS : CommandProtocol.ELEMENT_METHODS, method);
+    Channel channel = channels.poll();
+    if (channel == null) {
+      channel = new Channel(socketFactory.createCommandSocket());
+    }
+    byte status;
+    Object result;
+    try {
+      release(channel.out, false);
+      channel.out.writeInt(handle);
+      channel.out.writeShort(opcode);
+      channel.out.writeByte(args == null ? 0 : args.length);
+      for (int i = 0; args != null && i < args.length; i++) {
+        CommandProtocol.write(channel.out, args[i], this);
+      }
+      channel.out.flush();
+      status = channel.in.readByte();
+      result = CommandProtocol.read(channel.in, this);
+    } catch (IOException e) {
+      Util.close(channel.socket);
+      throw new RemoteException("Command to browser process failed.", e);
+    }
+    channels.offer(channel);
+    if (status == CommandProtocol.ERROR) {
+      if (result instanceof RuntimeException || result instanceof Error || result instanceof RemoteException) {
+        throw (Throwable) result;
+      }
+      throw new RemoteException("Command to browser process failed.", (Throwable) result);
+    }
+    return result;
+  }
+
+  /**
+   * Sends a driver command without waiting for it to be performed. Commands sent this way are performed
+   * in order, one at a time, by the browser process. The future is completed on a pooled thread once
+   * the browser process responds.
+   */
+  CompletableFuture<Object> async(Method method, Object... args) {
+    final CompletableFuture<Object> future = new CompletableFuture<Object>();
+    final short opcode;
+    try {
+      opcode = CommandProtocol.opcode(CommandProtocol.DRIVER_METHODS, method);
+    } catch (IllegalArgumentException e) {
+      future.completeExceptionally(e);
+      return future;
+    }
+    final int callId = callIds.incrementAndGet();
+    try {
+      ByteArrayOutputStream message = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(message);
+      release(out, true);
+      out.writeInt(callId);
+      out.writeInt(driverHandle);
+      out.writeShort(opcode);
+      out.writeByte(args == null ? 0 : args.length);
+      for (int i = 0; args != null && i < args.length; i++) {
+        CommandProtocol.write(out, args[i], this);
+      }
+      Socket socket;
+      synchronized (pending) {
+        if (asyncSocket == null || asyncSocket.isClosed()) {
+          AsyncReceiver receiver = new AsyncReceiver();
+          asyncSocket = socketFactory.createAsyncSocket(receiver);
+          receiver.socket = asyncSocket;
+        }
+        socket = asyncSocket;
+        pending.put(callId, future);
+      }
+      //written outside the lock so that responses can still be received if the write blocks
+      socket.getOutputStream().write(message.toByteArray());
+    } catch (IOException e) {
+      synchronized (pending) {
+        pending.remove(callId);
+      }
+      future.completeExceptionally(new RemoteException("Command to browser process failed.", e));
+    }
+    return future;
+  }
+
+  private class AsyncReceiver implements SocketMultiplexer.Receiver {
+    private Socket socket;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void receive(byte[] message) {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(message));
+      final CompletableFuture<Object> future;
+      Object result = null;
+      Throwable failure = null;
+      try {
+        int callId = in.readInt();
+        byte status = in.readByte();
+        synchronized (pending) {
+          future = pending.remove(callId);
+        }
+        if (future == null) {
+          return;
+        }
+        try {
+          result = CommandProtocol.read(in, CommandClient.this);
+          if (status == CommandProtocol.ERROR) {
+            failure = result instanceof RuntimeException || result instanceof Error || result instanceof RemoteException
+                ? (Throwable) result : new RemoteException("Command to browser process failed.", (Throwable) result);
+          }
+        } catch (IOException e) {
+          failure = new RemoteException("Command to browser process failed.", e);
+        }
+      } catch (IOException e) {
+        //message too short to identify its call
+        return;
+      }
+      final Object value = result;
+      final Throwable error = failure;
+      ForkJoinPool.commonPool().execute(new Runnable() {
+        @Override
+        public void run() {
+          if (error == null) {
+            future.complete(value);
+          } else {
+            future.completeExceptionally(error);
+          }
+        }
+      });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void closed() {
+      List<CompletableFuture<Object>> failed;
+      synchronized (pending) {
+        failed = new ArrayList<CompletableFuture<Object>>(pending.values());
+        pending.clear();
+        Util.close(socket);
+        if (asyncSocket == socket) {
+          asyncSocket = null;
+        }
+      }
+      for (CompletableFuture<Object> future : failed) {
+        future.completeExceptionally(new RemoteException("Connection to browser process closed."));
+      }
+    }
+  }
+
+  /**
+   * Writes a request releasing the handles of collected elements, if there are any.
+   * On an asynchronous stream the request needs a call id, though it gets no response.
+   */
+  private void release(DataOutputStream out, boolean async) throws IOException {
+    List<Integer> released = null;
+    synchronized (references) {
+      for (Reference<?> ref; (ref = collected.poll()) != null;) {
+        if (released == null) {
+          released = new ArrayList<Integer>();
+        }
+        released.add(references.remove(ref));
+      }
+    }
+    if (released != null) {
+      if (async) {
+        out.writeInt(0);
+      }
+      out.writeInt(CommandProtocol.DRIVER);
+      out.writeShort(CommandProtocol.RELEASE);
+      out.writeInt(released.size());
+      for (Integer handle : released) {
+        out.writeInt(handle);
+      }
+    }
+  }
+
+  private static class Channel {
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    Channel(Socket socket) throws IOException {
+      this.socket = socket;
+      this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+  }
+
+  private class Invoker implements InvocationHandler {
+    private final int handle;
+
+    Invoker(int handle) {
+      this.handle = handle;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if (method.getDeclaringClass().equals(Object.class)) {
+        if ("equals".equals(method.getName())) {
+          return proxy == args[0];
+        }
+        if ("hashCode".equals(method.getName())) {
+          return System.identityHashCode(proxy);
+        }
+        return new StringBuilder().append("Command[").append(handle).append("]").toString();
+      }
+      if (handle <= CommandProtocol.DRIVER && !CommandProtocol.supported(method)) {
+        try {
+          return method.invoke(rmi, args);
+        } catch (InvocationTargetException e) {
+          throw e.getCause();
+        }
+      }
+      return call(handle, method, args);
+    }
+  }
+}
@@ -0,0 +1,304 @@
+/*
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2016 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Method;
+import java.rmi.Remote;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact binary encoding of commands sent to the browser process, used instead of RMI
+ * serialization when {@link Settings.Builder#binaryProtocol(boolean)} is enabled.
+ * <p>
+ * A request is <code>[int handle][short opcode][byte argCount][value...]</code> and a response is
+ * <code>[byte status][value]</code>. Handle <code>0</code> is the driver, negative handles are the drivers
+ * of other sessions in the same process, and positive handles are elements. Opcodes index a method table generated from the remote interfaces, so both processes agree
+ * on them without any registry. Values are tagged and use dedicated encoders for the common types.
+ * <p>
+ * Asynchronous streams prefix each request and response with an <code>int</code> call id, so that
+ * responses can be matched to their futures as they arrive.
+ */
+class CommandProtocol {
+  static final int DRIVER = 0;
+  static final short RELEASE = -1;
+  static final byte OK = 0;
+  static final byte ERROR = 1;
+
+  private static final byte NULL = 0;
+  private static final byte STRING = 1;
+  private static final byte LONG = 2;
+  private static final byte INT = 3;
+  private static final byte DOUBLE = 4;
+  private static final byte TRUE = 5;
+  private static final byte FALSE = 6;
+  private static final byte BYTES = 7;
+  private static final byte LIST = 8;
+  private static final byte SET = 9;
+  private static final byte MAP = 10;
+  private static final byte ARRAY = 11;
+  private static final byte ELEMENT = 12;
+  private static final byte ELEMENT_LIST = 13;
+  private static final byte POINT = 14;
+  private static final byte DIMENSION = 15;
+  private static final byte RECTANGLE = 16;
+  private static final byte SERIALIZED = 17;
+
+  static final Method[] DRIVER_METHODS = methods(JBrowserDriverRemote.class);
+  static final Method[] ELEMENT_METHODS = methods(ElementRemote.class);
+
+  /**
+   * Maps elements to handles when writing and handles to elements when reading.
+   */
+  interface Handles {
+    int handle(ElementRemote element);
+
+    ElementRemote element(int handle);
+  }
+
+  private static Method[] methods(Class<?> type) {
+    Method[] methods = type.getMethods();
+    Arrays.sort(methods, new Comparator<Method>() {
+      @Override
+      public int compare(Method m1, Method m2) {
+        return signature(m1).compareTo(signature(m2));
+      }
+    });
+    return methods;
+  }
+
+  private static String signature(Method method) {
+    return new StringBuilder().append(method.getName())
+        .append(Arrays.toString(method.getParameterTypes())).toString();
+  }
+
+  /**
+   * @throws IllegalArgumentException
+   *           if the method has no command, rather than sending a code which means something else
+   */
+  static short opcode(Method[] table, Method method) {
+    for (short i = 0; i < table.length; i++) {
+      if (table[i].equals(method)) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("No command for method: " + method);
+  }
+
+  /**
+   * Methods returning other remote objects (navigation, options, etc.) keep using RMI.
+   */
+  static boolean supported(Method method) {
+    Class<?> returnType = method.getReturnType();
+    return !Remote.class.isAssignableFrom(returnType) || ElementRemote.class.equals(returnType);
+  }
+
+  static void write(DataOutputStream out, Object value, Handles handles) throws IOException {
+    if (value == null) {
+      out.writeByte(NULL);
+    } else if (value instanceof String) {
+      out.writeByte(STRING);
+      writeString(out, (String) value);
+    } else if (value instanceof Long) {
+      out.writeByte(LONG);
+      out.writeLong((Long) value);
+    } else if (value instanceof Integer) {
+      out.writeByte(INT);
+      out.writeInt((Integer) value);
+    } else if (value instanceof Double) {
+      out.writeByte(DOUBLE);
+      out.writeDouble((Double) value);
+    } else if (value instanceof Boolean) {
+      out.writeByte((Boolean) value ? TRUE : FALSE);
+    } else if (value instanceof byte[]) {
+      out.writeByte(BYTES);
+      out.writeInt(((byte[]) value).length);
+      out.write((byte[]) value);
+    } else if (value instanceof ElementRemote) {
+      out.writeByte(ELEMENT);
+      out.writeInt(handles.handle((ElementRemote) value));
+    } else if (value instanceof List && isElementList((List<?>) value)) {
+      out.writeByte(ELEMENT_LIST);
+      out.writeInt(((List<?>) value).size());
+      for (Object element : (List<?>) value) {
+        out.writeInt(handles.handle((ElementRemote) element));
+      }
+    } else if (value instanceof List || value instanceof Set) {
+      out.writeByte(value instanceof List ? LIST : SET);
+      out.writeInt(((Collection<?>) value).size());
+      for (Object item : (Collection<?>) value) {
+        write(out, item, handles);
+      }
+    } else if (value instanceof Map) {
+      out.writeByte(MAP);
+      out.writeInt(((Map<?, ?>) value).size());
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        write(out, entry.getKey(), handles);
+        write(out, entry.getValue(), handles);
+      }
+    } else if (value instanceof Object[]) {
+      out.writeByte(ARRAY);
+      out.writeInt(((Object[]) value).length);
+      for (Object item : (Object[]) value) {
+        write(out, item instanceof CharSequence ? item.toString() : item, handles);
+      }
+    } else if (value instanceof Point) {
+      org.openqa.selenium.Point point = ((Point) value).toSelenium();
+      out.writeByte(POINT);
+      out.writeInt(point.getX());
+      out.writeInt(point.getY());
+    } else if (value instanceof Dimension) {
+      org.openqa.selenium.Dimension dimension = ((Dimension) value).toSelenium();
+      out.writeByte(DIMENSION);
+      out.writeInt(dimension.getWidth());
+      out.writeInt(dimension.getHeight());
+    } else if (value instanceof Rectangle) {
+      org.openqa.selenium.Rectangle rect = ((Rectangle) value).toSelenium();
+      out.writeByte(RECTANGLE);
+      out.writeInt(rect.x);
+      out.writeInt(rect.y);
+      out.writeInt(rect.height);
+      out.writeInt(rect.width);
+    } else {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+      objectOut.writeObject(value);
+      objectOut.close();
+      out.writeByte(SERIALIZED);
+      out.writeInt(bytes.size());
+      bytes.writeTo(out);
+    }
+  }
+
+  static Object read(DataInputStream in, Handles handles) throws IOException {
+    byte tag = in.readByte();
+    switch (tag) {
+      case NULL:
+        return null;
+      case STRING:
+        return readString(in);
+      case LONG:
+        return in.readLong();
+      case INT:
+        return in.readInt();
+      case DOUBLE:
+        return in.readDouble();
+      case TRUE:
+        return true;
+      case FALSE:
+        return false;
+      case BYTES: {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+      }
+      case ELEMENT:
+        return handles.element(in.readInt());
+      case ELEMENT_LIST: {
+        int size = in.readInt();
+        List<ElementRemote> list = new ArrayList<ElementRemote>(size);
+        for (int i = 0; i < size; i++) {
+          list.add(handles.element(in.readInt()));
+        }
+        return list;
+      }
+      case LIST:
+      case SET: {
+        int size = in.readInt();
+        Collection<Object> collection = tag == LIST ? new ArrayList<Object>(size) : new LinkedHashSet<Object>();
+        for (int i = 0; i < size; i++) {
+          collection.add(read(in, handles));
+        }
+        return collection;
+      }
+      case MAP: {
+        int size = in.readInt();
+        Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+        for (int i = 0; i < size; i++) {
+          map.put(read(in, handles), read(in, handles));
+        }
+        return map;
+      }
+      case ARRAY: {
+        Object[] array = new Object[in.readInt()];
+        for (int i = 0; i < array.length; i++) {
+          array[i] = read(in, handles);
+        }
+        return array;
+      }
+      case POINT:
+        return new Point(in.readInt(), in.readInt());
+      case DIMENSION:
+        return new Dimension(in.readInt(), in.readInt());
+      case RECTANGLE:
+        return new Rectangle(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+      case SERIALIZED: {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(bytes));
+        try {
+          return objectIn.readObject();
+        } catch (ClassNotFoundException e) {
+          throw new IOException(e);
+        } finally {
+          objectIn.close();
+        }
+      }
+      default:
+        throw new IOException("Unknown value type: " + tag);
+    }
+  }
+
+  private static boolean isElementList(List<?> list) {
+    if (list.isEmpty()) {
+      return false;
+    }
+    for (Object item : list) {
+      if (!(item instanceof ElementRemote)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void writeString(DataOutputStream out, String str) throws IOException {
+    byte[] bytes = str.getBytes("utf-8");
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, "utf-8");
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2016 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openqa.selenium.WebDriverException;
+
+/**
+ * Browser process side of the binary command protocol. Decodes requests, invokes them on
+ * the driver or element they target, and encodes the results.
+ */
+class CommandServer implements SocketMultiplexer.Handler, CommandProtocol.Handles {
+  private final Map<Integer, JBrowserDriverServer> drivers = new HashMap<Integer, JBrowserDriverServer>();
+
+  CommandServer(JBrowserDriverServer driver) {
+    register(driver);
+  }
+
+  /**
+   * Makes a session's driver available at its handle (see {@link JBrowserDriverServer#handle()}).
+   */
+  void register(JBrowserDriverServer driver) {
+    synchronized (drivers) {
+      drivers.put(driver.handle(), driver);
+    }
+  }
+
+  @Override
+  public void handle(final Socket socket, final byte kind) {
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        serve(socket, kind == SocketMultiplexer.ASYNC_STREAM);
+      }
+    });
+    thread.setDaemon(true);
+    thread.setName("jBrowserDriver command server");
+    thread.start();
+  }
+
+  /**
+   * Performs requests in the order received. On an asynchronous stream, each request is preceded
+   * by a call id which is echoed at the start of its response, and each response is sent with a single
+   * write so that the parent receives it as one message.
+   */
+  private void serve(Socket socket, boolean async) {
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      DataOutputStream bufferOut = new DataOutputStream(buffer);
+      while (true) {
+        int callId = async ? in.readInt() : 0;
+        int handle = in.readInt();
+        short opcode = in.readShort();
+        if (opcode == CommandProtocol.RELEASE) {
+          release(in);
+          continue;
+        }
+        Object[] args = new Object[in.readByte()];
+        for (int i = 0; i < args.length; i++) {
+          args[i] = CommandProtocol.read(in, this);
+        }
+        Object result;
+        byte status = CommandProtocol.OK;
+        try {
+          result = invoke(handle, opcode, args);
+        } catch (Throwable t) {
+          status = CommandProtocol.ERROR;
+          result = t instanceof InvocationTargetException ? t.getCause() : t;
+        }
+        buffer.reset();
+        try {
+          CommandProtocol.write(bufferOut, result, this);
+        } catch (NotSerializableException e) {
+          status = CommandProtocol.ERROR;
+          buffer.reset();
+          CommandProtocol.write(bufferOut, new WebDriverException(e), this);
+        }
+        if (async) {
+          ByteArrayOutputStream message = new ByteArrayOutputStream(buffer.size() + 5);
+          DataOutputStream messageOut = new DataOutputStream(message);
+          messageOut.writeInt(callId);
+          messageOut.writeByte(status);
+          buffer.writeTo(messageOut);
+          socket.getOutputStream().write(message.toByteArray());
+        } else {
+          out.writeByte(status);
+          buffer.writeTo(out);
+          out.flush();
+        }
+      }
+    } catch (EOFException e) {
+      //parent closed the stream
+    } catch (Throwable t) {
+      LogsServer.instance().exception(t);
+    } finally {
+      Util.close(socket);
+    }
+  }
+
+  private Object invoke(int handle, short opcode, Object[] args) throws Throwable {
+    Method method;
+    Object target;
+    Session session = null;
+    if (handle <= CommandProtocol.DRIVER) {
+      JBrowserDriverServer driver;
+      synchronized (drivers) {
+        driver = drivers.get(handle);
+      }
+      if (driver == null) {
+        throw new WebDriverException("The browser session has ended.");
+      }
+      method = CommandProtocol.DRIVER_METHODS[opcode];
+      target = driver;
+      session = driver.session;
+    } else {
+      method = CommandProtocol.ELEMENT_METHODS[opcode];
+      ElementServer element = ElementHandles.element(handle);
+      target = element;
+      //processes can host several sessions, so the element's own is entered
+      session = element.contextItem().session;
+    }
+    Class<?>[] types = method.getParameterTypes();
+    for (int i = 0; i < args.length; i++) {
+      if (types[i].isArray() && args[i] != null && !types[i].isInstance(args[i])) {
+        Object[] source = (Object[]) args[i];
+        Object converted = Array.newInstance(types[i].getComponentType(), source.length);
+        System.arraycopy(source, 0, converted, 0, source.length);
+        args[i] = converted;
+      }
+    }
+    if (session == null) {
+      return method.invoke(target, args);
+    }
+    Session previous = Session.enter(session);
+    try {
+      return method.invoke(target, args);
+    } finally {
+      Session.enter(previous);
+    }
+  }
+
+  private void release(DataInputStream in) throws IOException {
+    int[] released = new int[in.readInt()];
+    for (int i = 0; i < released.length; i++) {
+      released[i] = in.readInt();
+    }
+    ElementHandles.release(released);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int handle(ElementRemote element) {
+    return ElementHandles.handle((ElementServer) element);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public ElementRemote element(int handle) {
+    return ElementHandles.element(handle);
+  }
+}
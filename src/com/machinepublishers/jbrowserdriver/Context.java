@@ -36,6 +36,7 @@ import org.openqa.selenium.Capabilities;
 import com.machinepublishers.jbrowserdriver.AppThread.Sync;
 
 class Context {
+  final Session session;
   final AtomicBoolean initialized = new AtomicBoolean();
   final AtomicReference<TimeoutsServer> timeouts = new AtomicReference<TimeoutsServer>();
   final AtomicReference<TargetLocatorServer> targetLocator = new AtomicReference<TargetLocatorServer>();
@@ -53,11 +54,12 @@ class Context {
   private final AtomicReference<File> autoUserDataDirectory = new AtomicReference<>();;
   private final Object lock = new Object();
 
-  Context() {
+  Context(Session session) {
+    this.session = session;
     synchronized (lock) {
       //UserData dir must be computed before any ContextItem is initialized.
       setUpUserDataDir();
-      ContextItem newContext = new ContextItem();
+      ContextItem newContext = new ContextItem(session);
       items.add(newContext);
       itemMap.put(newContext.itemId.get(), newContext);
       try {
@@ -72,7 +74,7 @@ class Context {
   private void setUpUserDataDir() {
     FileUtils.deleteQuietly(autoUserDataDirectory.get());
     autoUserDataDirectory.set(null);
-    if (SettingsManager.settings().userDataDirectory() == null) {
+    if (session.settings().userDataDirectory() == null) {
       //Temporary because cookies aren't saved too.
       //App has its own temp dir, so this won't collide with other instances.
       try {
@@ -82,7 +84,7 @@ class Context {
         Util.handleException(e);
       }
     } else {
-      userDataDirectory.set(SettingsManager.settings().userDataDirectory());
+      userDataDirectory.set(session.settings().userDataDirectory());
       userDataDirectory.get().mkdirs();
     }
   }
@@ -91,7 +93,7 @@ class Context {
     removeItems();
     synchronized (lock) {
       setUpUserDataDir();
-      ContextItem newContext = new ContextItem();
+      ContextItem newContext = new ContextItem(session);
       newContext.init(driver, this);
       items.add(newContext);
       itemMap.put(newContext.itemId.get(), newContext);
@@ -159,7 +161,7 @@ class Context {
           @Override
           public ContextItem perform() {
             synchronized (lock) {
-              ContextItem newContext = new ContextItem();
+              ContextItem newContext = new ContextItem(session);
               newContext.init(driver, thisObj);
               newContext.stage.get().toBack();
               items.add(newContext);
@@ -191,6 +193,7 @@ class Context {
           public Object perform() {
             synchronized (lock) {
               items.get(current).stage.get().close();
+              ElementHandles.invalidate(items.get(current));
               itemMap.remove(items.remove(current).itemId.get());
               current = 0;
               return null;
@@ -205,7 +208,9 @@ class Context {
           @Override
           public Object perform() {
             synchronized (lock) {
-              itemMap.remove(itemId).stage.get().close();
+              ContextItem item = itemMap.remove(itemId);
+              item.stage.get().close();
+              ElementHandles.invalidate(item);
               items.remove(itemId);
               current = 0;
               return null;
@@ -222,6 +227,7 @@ class Context {
             synchronized (lock) {
               for (ContextItem curItem : items) {
                 curItem.stage.get().close();
+                ElementHandles.invalidate(curItem);
               }
               items.clear();
               itemMap.clear();
@@ -47,11 +47,16 @@ class ContextItem {
   final AtomicBoolean initialized = new AtomicBoolean();
   final AtomicReference<String> itemId = new AtomicReference<String>();
   final AtomicReference<Context> context = new AtomicReference<Context>();
-  final StatusCode statusCode = new StatusCode();
+  final AtomicLong epoch = new AtomicLong();
+  final ScriptCache scripts = new ScriptCache();
+  final Session session;
+  final StatusCode statusCode;
   private final Object lock = new Object();
   private ElementServer frame;
 
-  ContextItem() {
+  ContextItem(Session session) {
+    this.session = session;
+    this.statusCode = new StatusCode(session);
     itemId.set(Long.toString(currentItemId.getAndIncrement()));
   }
 
@@ -184,25 +189,33 @@ class ContextItem {
   void init(final JBrowserDriverServer driver, final Context context) {
     if (initialized.compareAndSet(false, true)) {
       this.context.set(context);
-      SettingsManager.register(stage, view);
+      SettingsManager.register(session.settings(), stage, view);
       engine.set(view.get().getEngine());
       try {
-        window.set(new WindowServer(stage, statusCode));
+        window.set(new WindowServer(stage, statusCode, session));
         context.alert.get().listen(this);
       } catch (RemoteException e) {
         Util.handleException(e);
       }
       final ContextItem thisObject = this;
       AppThread.exec(statusCode, () -> {
-        Settings settings = SettingsManager.settings();
+        Settings settings = session.settings();
         engine.get().setJavaScriptEnabled(settings.javascript());
+        if (settings.renderOnDemand()) {
+          //transparent nodes are laid out and receive input, but aren't painted
+          view.get().setOpacity(0);
+        }
+        engine.get().setUserAgent(session.markUserAgent(engine.get().getUserAgent()));
         //If null engine uses automatic value.
         engine.get().setUserDataDirectory(context.userDataDirectory.get());
         httpListener.set(new HttpListener(thisObject,
             statusCode, context.timeouts.get().getPageLoadTimeoutObjMS()));
-        httpListener.get().init();
         Accessor.getPageFor(view.get().getEngine()).addLoadListenerClient(httpListener.get());
         engine.get().setCreatePopupHandler(new PopupHandler(driver, context));
+        engine.get().documentProperty().addListener((observable, oldValue, newValue) -> {
+          ElementHandles.invalidate(thisObject);
+          scripts.clear();
+        });
         return null;
       });
     }
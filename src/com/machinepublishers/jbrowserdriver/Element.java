@@ -41,7 +41,7 @@ import org.openqa.selenium.internal.WrapsDriver;
 
 class Element implements WebElement, JavascriptExecutor, FindsById, FindsByClassName,
     FindsByLinkText, FindsByName, FindsByCssSelector, FindsByTagName, FindsByXPath, Locatable,
-    WrapsDriver {
+    WrapsDriver, BatchExecutor {
   private final ElementRemote remote;
   private final JBrowserDriver driver;
   private final SocketLock lock;
@@ -50,6 +50,9 @@ class Element implements WebElement, JavascriptExecutor, FindsById, FindsByClass
     this.remote = remote;
     this.driver = driver;
     this.lock = lock;
+    if (driver != null) {
+      driver.own(remote);
+    }
   }
 
   static List<WebElement> constructList(List<ElementRemote> elements, JBrowserDriver driver, SocketLock lock) {
@@ -688,6 +691,21 @@ class Element implements WebElement, JavascriptExecutor, FindsById, FindsByClass
     return driver;
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Batch.Results batch(Batch batch) {
+    try {
+      synchronized (lock.validated()) {
+        return new Batch.Results(batch, remote.batch(batch), driver, lock);
+      }
+    } catch (Throwable t) {
+      Util.handleException(t);
+      return null;
+    }
+  }
+
   /**
    * {@inheritDoc}
    */
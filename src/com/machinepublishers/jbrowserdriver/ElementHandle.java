@@ -0,0 +1,154 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2016 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What an element is sent to the parent as over RMI: its handle and the endpoint of its browser process.
+ * <p>
+ * The parent receives a proxy which calls the element through the endpoint. Once a proxy is collected,
+ * its handle is released along with the next call to the same endpoint.
+ */
+class ElementHandle implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private static final ReferenceQueue<Object> collected = new ReferenceQueue<Object>();
+  private static final Map<Reference<?>, ElementHandle> references = new HashMap<Reference<?>, ElementHandle>();
+  private static final Map<ElementsRemote, List<Integer>> released = new HashMap<ElementsRemote, List<Integer>>();
+  private static final Map<ElementsRemote, Object> owners = new HashMap<ElementsRemote, Object>();
+
+  private final ElementsRemote endpoint;
+  private final int handle;
+
+  ElementHandle(ElementsRemote endpoint, int handle) {
+    this.endpoint = endpoint;
+    this.handle = handle;
+  }
+
+  private Object readResolve() throws ObjectStreamException {
+    ElementRemote element = (ElementRemote) Proxy.newProxyInstance(ElementRemote.class.getClassLoader(),
+        new Class<?>[] { ElementRemote.class }, new Invoker(this));
+    synchronized (references) {
+      references.put(new WeakReference<Object>(element, collected), this);
+    }
+    return element;
+  }
+
+  private static int[] released(ElementsRemote endpoint) {
+    synchronized (references) {
+      for (Reference<?> ref; (ref = collected.poll()) != null;) {
+        ElementHandle handle = references.remove(ref);
+        if (handle == null) {
+          //its browser process has ended
+          continue;
+        }
+        List<Integer> list = released.get(handle.endpoint);
+        if (list == null) {
+          list = new ArrayList<Integer>();
+          released.put(handle.endpoint, list);
+        }
+        list.add(handle.handle);
+      }
+      List<Integer> list = released.remove(endpoint);
+      if (list == null) {
+        return null;
+      }
+      int[] handles = new int[list.size()];
+      for (int i = 0; i < handles.length; i++) {
+        handles[i] = list.get(i);
+      }
+      return handles;
+    }
+  }
+
+  /**
+   * Notes which browser process the endpoint of an element belongs to, so that its handles can be
+   * forgotten when the process ends.
+   *
+   * @param process
+   *          Identifies the browser process
+   */
+  static void own(ElementRemote element, Object process) {
+    if (Proxy.isProxyClass(element.getClass()) && Proxy.getInvocationHandler(element) instanceof Invoker) {
+      ElementsRemote endpoint = ((Invoker) Proxy.getInvocationHandler(element)).element.endpoint;
+      synchronized (references) {
+        if (!owners.containsKey(endpoint)) {
+          owners.put(endpoint, process);
+        }
+      }
+    }
+  }
+
+  /**
+   * Forgets the handles of the endpoints of a browser process which has ended.
+   *
+   * @param process
+   *          Identifies the browser process
+   */
+  static void forget(Object process) {
+    synchronized (references) {
+      for (Iterator<Map.Entry<ElementsRemote, Object>> it = owners.entrySet().iterator(); it.hasNext();) {
+        Map.Entry<ElementsRemote, Object> owner = it.next();
+        if (owner.getValue() == process) {
+          released.remove(owner.getKey());
+          for (Iterator<ElementHandle> handles = references.values().iterator(); handles.hasNext();) {
+            if (handles.next().endpoint.equals(owner.getKey())) {
+              handles.remove();
+            }
+          }
+          it.remove();
+        }
+      }
+    }
+  }
+
+  private static class Invoker implements InvocationHandler {
+    private final ElementHandle element;
+
+    Invoker(ElementHandle element) {
+      this.element = element;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if (method.getDeclaringClass().equals(Object.class)) {
+        if ("equals".equals(method.getName())) {
+          return proxy == args[0];
+        }
+        if ("hashCode".equals(method.getName())) {
+          return System.identityHashCode(proxy);
+        }
+        return new StringBuilder().append("Element[").append(element.handle).append("]").toString();
+      }
+      return element.endpoint.invoke(released(element.endpoint), element.handle,
+          CommandProtocol.opcode(CommandProtocol.ELEMENT_METHODS, method), args);
+    }
+  }
+}
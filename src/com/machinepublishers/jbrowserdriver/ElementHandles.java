@@ -0,0 +1,121 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2016 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openqa.selenium.StaleElementReferenceException;
+
+/**
+ * Browser process side table of the elements handed to the parent, which addresses them by handle
+ * rather than by exported remote objects.
+ * <p>
+ * A handle belongs to the epoch of its window's document. When the window navigates to another document
+ * or closes, the epoch ends and its handles are released together.
+ */
+class ElementHandles {
+  private static final Object lock = new Object();
+  private static final AtomicInteger handleIds = new AtomicInteger(CommandProtocol.DRIVER);
+  private static final Map<Integer, Entry> entries = new HashMap<Integer, Entry>();
+  private static final Map<ElementServer, Integer> handles = new IdentityHashMap<ElementServer, Integer>();
+  private static final Map<ContextItem, Set<Integer>> items = new IdentityHashMap<ContextItem, Set<Integer>>();
+
+  private static class Entry {
+    private final ElementServer element;
+    private final long epoch;
+
+    Entry(ElementServer element, long epoch) {
+      this.element = element;
+      this.epoch = epoch;
+    }
+  }
+
+  /**
+   * @return The handle of the element, which is positive so as not to clash with driver handles
+   */
+  static int handle(ElementServer element) {
+    synchronized (lock) {
+      Integer handle = handles.get(element);
+      if (handle == null) {
+        handle = handleIds.incrementAndGet();
+        ContextItem item = element.contextItem();
+        handles.put(element, handle);
+        entries.put(handle, new Entry(element, item.epoch.get()));
+        Set<Integer> itemHandles = items.get(item);
+        if (itemHandles == null) {
+          itemHandles = new HashSet<Integer>();
+          items.put(item, itemHandles);
+        }
+        itemHandles.add(handle);
+      }
+      return handle;
+    }
+  }
+
+  static ElementServer element(int handle) {
+    Entry entry;
+    synchronized (lock) {
+      entry = entries.get(handle);
+    }
+    if (entry == null || entry.epoch != entry.element.contextItem().epoch.get()) {
+      throw new StaleElementReferenceException("The element is no longer attached to this browser.");
+    }
+    return entry.element;
+  }
+
+  /**
+   * Releases handles which the parent no longer references.
+   */
+  static void release(int[] released) {
+    synchronized (lock) {
+      for (int i = 0; released != null && i < released.length; i++) {
+        Entry entry = entries.remove(released[i]);
+        if (entry != null) {
+          handles.remove(entry.element);
+          Set<Integer> itemHandles = items.get(entry.element.contextItem());
+          if (itemHandles != null) {
+            itemHandles.remove(released[i]);
+            if (itemHandles.isEmpty()) {
+              items.remove(entry.element.contextItem());
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Ends the current epoch of the window, releasing all handles of its elements.
+   */
+  static void invalidate(ContextItem item) {
+    item.epoch.incrementAndGet();
+    synchronized (lock) {
+      Set<Integer> itemHandles = items.remove(item);
+      if (itemHandles != null) {
+        for (Integer handle : itemHandles) {
+          handles.remove(entries.remove(handle).element);
+        }
+      }
+    }
+  }
+}
@@ -104,4 +104,6 @@ interface ElementRemote extends Remote {
   int remoteHashCode() throws RemoteException;
 
   boolean remoteEquals(ElementId id) throws RemoteException;
+
+  List<Object> batch(Batch batch) throws RemoteException;
 }
@@ -17,6 +17,8 @@
  */
 package com.machinepublishers.jbrowserdriver;
 
+import java.io.ObjectStreamException;
+import java.io.Serializable;
 import java.rmi.RemoteException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -58,9 +60,13 @@ import com.machinepublishers.jbrowserdriver.Robot.MouseButton;
 import javafx.stage.Stage;
 import netscape.javascript.JSObject;
 
-class ElementServer extends RemoteObject implements ElementRemote, WebElement,
+/**
+ * An element of the page. Elements aren't exported as remote objects; they're sent to the parent
+ * as handles (see {@link ElementHandles}).
+ */
+class ElementServer implements ElementRemote, WebElement,
     JavascriptExecutor, FindsById, FindsByClassName, FindsByLinkText, FindsByName,
-    FindsByCssSelector, FindsByTagName, FindsByXPath {
+    FindsByCssSelector, FindsByTagName, FindsByXPath, Serializable {
 
   private static final String IS_VISIBLE;
 
@@ -165,6 +171,14 @@ class ElementServer extends RemoteObject implements ElementRemote, WebElement,
     return node;
   }
 
+  ContextItem contextItem() {
+    return contextItem;
+  }
+
+  private Object writeReplace() throws ObjectStreamException {
+    return new ElementHandle(ElementsServer.instance(), ElementHandles.handle(this));
+  }
+
   void setFrameId(long frameId) {
     this.frameId.set(frameId);
   }
@@ -866,68 +880,60 @@ class ElementServer extends RemoteObject implements ElementRemote, WebElement,
    */
   @Override
   public Object executeAsyncScript(final String script, final Object... args) {
-    final JavascriptNames jsNames = new JavascriptNames();
-    script(true, script, args, jsNames);
+    final Callback callback = new Callback();
+    script(script, args, callback);
     long timeoutAt = contextItem.context.get().timeouts.get().getScriptTimeoutMS();
     if (timeoutAt > 0) {
       timeoutAt += System.currentTimeMillis();
     } else {
       timeoutAt = Long.MAX_VALUE;
     }
-    int sleep = 1;
-    final int sleepBackoff = 2;
-    final int sleepMax = 0x101;
-    try {
-      while (true) {
-        sleep = sleep < sleepMax ? sleep * sleepBackoff : sleep;
-        try {
-          Thread.sleep(sleep);
-        } catch (InterruptedException e) {}
-        Object result = AppThread.exec(
-            contextItem.statusCode,
-            new Sync<Object>() {
-              @Override
-              public Object perform() {
-                validate(false);
-                return node.eval(new StringBuilder()
-                    .append("(function(){return this.")
-                    .append(jsNames.callbackVal)
-                    .append(";})();").toString());
-              }
-            });
-        if (!(result instanceof String) || !"undefined".equals(result.toString())) {
-          Object parsed = parseScriptResult(result);
-          if (parsed instanceof List) {
-            if (((List) parsed).size() == 0) {
-              return null;
-            }
-            if (((List) parsed).size() == 1) {
-              return ((List) parsed).get(0);
-            }
-          }
-          return parsed;
-        }
-        if (System.currentTimeMillis() > timeoutAt) {
+    Object result;
+    synchronized (callback) {
+      while (!callback.done) {
+        long wait = timeoutAt - System.currentTimeMillis();
+        if (wait <= 0) {
           throw new TimeoutException(
               "Timeout of " +
                   contextItem.context.get().timeouts.get().getScriptTimeoutMS() +
                   "ms reached for waiting async script to complete.");
         }
+        try {
+          callback.wait(wait);
+        } catch (InterruptedException e) {}
+      }
+      result = callback.result;
+      callback.result = null;
+    }
+    Object parsed = parseScriptResult(result);
+    if (parsed instanceof List) {
+      if (((List) parsed).size() == 0) {
+        return null;
+      }
+      if (((List) parsed).size() == 1) {
+        return ((List) parsed).get(0);
+      }
+    }
+    return parsed;
+  }
+
+  /**
+   * Called by the page when an async script completes, waking the thread waiting for its result.
+   */
+  public static class Callback {
+    private Object result;
+    private boolean done;
+
+    private Callback() {
+
+    }
+
+    public synchronized void complete(Object result) {
+      if (!done) {
+        this.result = result;
+        done = true;
+        notifyAll();
       }
-    } finally {
-      AppThread.exec(
-          contextItem.statusCode,
-          new Sync<Object>() {
-            @Override
-            public Object perform() {
-              validate(false);
-              node.eval(new StringBuilder()
-                  .append("delete ")
-                  .append(jsNames.callbackVal)
-                  .append(";").toString());
-              return null;
-            }
-          });
     }
   }
 
@@ -936,7 +942,7 @@ class ElementServer extends RemoteObject implements ElementRemote, WebElement,
    */
   @Override
   public Object executeScript(final String script, final Object... args) {
-    return script(false, script, args, new JavascriptNames());
+    return script(script, args, null);
   }
 
   private static List<ElementServer> asList(Object objToCast) {
@@ -947,13 +953,11 @@ class ElementServer extends RemoteObject implements ElementRemote, WebElement,
     }
   }
 
-  private static class JavascriptNames {
-    private final String callbackVal = Util.randomPropertyName();
-    private final String callback = Util.randomPropertyName();
-    private final String exec = Util.randomPropertyName();
-  }
-
-  private Object script(boolean callback, String script, Object[] args, final JavascriptNames jsNames) {
+  /**
+   * @param callback
+   *          Completed by the page if the script is async, or else <code>null</code>
+   */
+  private Object script(String script, Object[] args, final Callback callback) {
     for (int i = 0; args != null && i < args.length; i++) {
       if (args[i] instanceof ElementId) {
         synchronized (map) {
@@ -967,34 +971,17 @@ class ElementServer extends RemoteObject implements ElementRemote, WebElement,
           public Object perform() {
             validate(false);
             List<Object> argList = new ArrayList<Object>();
+            argList.add(node);
             if (args != null) {
               argList.addAll(Arrays.asList(args));
             }
             try {
-              if (callback) {
-                argList.add(null);
-                node.eval(new StringBuilder().append("(function(){")
-                    .append("this.").append(jsNames.callback).append(" = function(){")
-                    .append(jsNames.callbackVal).append(" = arguments && arguments.length > 0? arguments[0] : null;")
-                    .append("}")
-                    .append("}).apply(this);")
-                    .append("this.").append(jsNames.exec).append(" = function(){")
-                    .append("arguments[arguments.length-1] = this.").append(jsNames.callback).append(";")
-                    .append("return (function(){").append(script).append("}).apply(this, arguments);")
-                    .append("};").toString());
-              } else {
-                node.eval(new StringBuilder().append("this.").append(jsNames.exec).append(" = function(){")
-                    .append("return (function(){").append(script).append("}).apply(this, arguments);")
-                    .append("};").toString());
+              if (callback != null) {
+                argList.add(contextItem.scripts.callback(node, callback));
               }
-              return node.call(jsNames.exec, argList.toArray(new Object[0]));
+              return contextItem.scripts.function(node, script).call("call", argList.toArray(new Object[0]));
             } catch (Throwable t) {
               return t;
-            } finally {
-              node.eval(new StringBuilder().append("delete ").append("this.").append(jsNames.exec).append(";").toString());
-              if (callback) {
-                node.eval(new StringBuilder().append("delete ").append("this.").append(jsNames.callback).append(";").toString());
-              }
             }
           }
         }));
@@ -1019,6 +1006,28 @@ class ElementServer extends RemoteObject implements ElementRemote, WebElement,
               }
             }
             if (obj instanceof JSObject) {
+              Object[] marshalled = null;
+              try {
+                marshalled = ScriptResults.unpack(
+                    contextItem.scripts.helper(node, ScriptResults.MARSHAL).call("call", null, obj));
+              } catch (Throwable t) {
+                LogsServer.instance().exception(t);
+              }
+              if (marshalled != null) {
+                final JSObject nodes = (JSObject) marshalled[1];
+                return ScriptResults.decode((String) marshalled[0], new ScriptResults.Nodes() {
+                  @Override
+                  public Object node(int index) {
+                    try {
+                      return new ElementServer((JSObject) nodes.getSlot(index), contextItem);
+                    } catch (RemoteException e) {
+                      Util.handleException(e);
+                      return null;
+                    }
+                  }
+                });
+              }
+              //not pure data, e.g., it has cycles
               List<Object> list = new ArrayList<Object>();
               boolean isList = false;
               for (int i = 0;; i++) {
@@ -1154,4 +1163,20 @@ class ElementServer extends RemoteObject implements ElementRemote, WebElement,
         });
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<Object> batch(final Batch batch) {
+    return AppThread.exec(
+        contextItem.statusCode,
+        new Sync<List<Object>>() {
+          @Override
+          public List<Object> perform() {
+            validate(false);
+            return batch.perform(ElementServer.this);
+          }
+        });
+  }
+
 }
@@ -0,0 +1,88 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2016 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.rmi.RemoteException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The single remote endpoint through which the parent calls elements of this browser process,
+ * so that elements don't need to be exported individually.
+ */
+class ElementsServer extends RemoteObject implements ElementsRemote {
+  private static final long serialVersionUID = 1L;
+  private static final AtomicReference<ElementsServer> instance = new AtomicReference<ElementsServer>();
+
+  private ElementsServer() throws RemoteException {}
+
+  static ElementsServer instance() {
+    synchronized (instance) {
+      if (instance.get() == null) {
+        try {
+          instance.set(new ElementsServer());
+        } catch (RemoteException e) {
+          Util.handleException(e);
+        }
+      }
+      return instance.get();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Object invoke(int[] released, int handle, short opcode, Object[] args) throws RemoteException {
+    ElementHandles.release(released);
+    ElementServer element = ElementHandles.element(handle);
+    Method method = CommandProtocol.ELEMENT_METHODS[opcode];
+    Class<?>[] types = method.getParameterTypes();
+    for (int i = 0; args != null && i < args.length; i++) {
+      if (types[i].isArray() && args[i] != null && !types[i].isInstance(args[i])) {
+        Object[] source = (Object[]) args[i];
+        Object converted = Array.newInstance(types[i].getComponentType(), source.length);
+        System.arraycopy(source, 0, converted, 0, source.length);
+        args[i] = converted;
+      }
+    }
+    //processes can host several sessions, so the element's own is entered
+    Session previous = Session.enter(element.contextItem().session);
+    try {
+      return method.invoke(element, args);
+    } catch (InvocationTargetException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      if (cause instanceof RemoteException) {
+        throw (RemoteException) cause;
+      }
+      throw new RemoteException("Element command failed.", cause);
+    } catch (IllegalAccessException e) {
+      throw new RemoteException("Element command failed.", e);
+    } finally {
+      Session.enter(previous);
+    }
+  }
+}
@@ -25,12 +25,16 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.http.client.cache.HttpCacheEntry;
@@ -40,9 +44,15 @@ import org.apache.http.client.cache.HttpCacheUpdateException;
 
 class HttpCache implements HttpCacheStorage {
   private final File cacheDir;
+  private final boolean shared;
 
-  HttpCache(File cacheDir) {
+  /**
+   * @param shared
+   *          Whether other processes may use the directory, so that files must be locked
+   */
+  HttpCache(File cacheDir, boolean shared) {
     this.cacheDir = cacheDir;
+    this.shared = shared;
   }
 
   /**
@@ -59,7 +69,7 @@ class HttpCache implements HttpCacheStorage {
    */
   @Override
   public void removeEntry(String key) throws IOException {
-    try (Lock lock = new Lock(new File(cacheDir, DigestUtils.sha1Hex(key)), false, false)) {
+    try (Lock lock = new Lock(new File(cacheDir, DigestUtils.sha1Hex(key)), false, false, shared)) {
       lock.file.delete();
     } catch (FileNotFoundException e) {
       //ignore
@@ -71,7 +81,7 @@ class HttpCache implements HttpCacheStorage {
    */
   @Override
   public void putEntry(String key, HttpCacheEntry entry) throws IOException {
-    try (Lock lock = new Lock(new File(cacheDir, DigestUtils.sha1Hex(key)), false, true)) {
+    try (Lock lock = new Lock(new File(cacheDir, DigestUtils.sha1Hex(key)), false, true, shared)) {
       BufferedOutputStream bufferOut = new BufferedOutputStream(lock.streamOut);
       try (ObjectOutputStream objectOut = new ObjectOutputStream(bufferOut)) {
         objectOut.writeObject(entry);
@@ -84,7 +94,7 @@ class HttpCache implements HttpCacheStorage {
    */
   @Override
   public HttpCacheEntry getEntry(String key) throws IOException {
-    try (Lock lock = new Lock(new File(cacheDir, DigestUtils.sha1Hex(key)), true, false)) {
+    try (Lock lock = new Lock(new File(cacheDir, DigestUtils.sha1Hex(key)), true, false, shared)) {
       BufferedInputStream bufferIn = new BufferedInputStream(lock.streamIn);
       try (ObjectInputStream objectIn = new ObjectInputStream(bufferIn)) {
         return (HttpCacheEntry) objectIn.readObject();
@@ -97,50 +107,142 @@ class HttpCache implements HttpCacheStorage {
     return null;
   }
 
+  /**
+   * Locks a cache file, shared for reading or exclusive for writing. Files are locked within this process
+   * by one of a fixed set of read-write locks, chosen by the file's path, and are also locked on disk
+   * if the cache is shared with other processes.
+   * <p>
+   * A process can only hold one lock on a file, so readers of the same file share its lock on disk
+   * and read through the channel holding it, since closing any other channel of the file may release it.
+   */
   private static class Lock implements Closeable {
-    private static final int MAX_RETRIES = 50;
-    private static final int RETRY_SLEEP = 100;
-    private static final Set<String> locks = new HashSet<String>();
-    private String lockName;
+    private static final int MAX_RETRIES = 10;
+    private static final int MAX_RETRY_SLEEP = 100;
+    private static final ReadWriteLock[] stripes = new ReadWriteLock[64];
+    private static final Map<String, Reader> readers = new HashMap<String, Reader>();
+    static {
+      for (int i = 0; i < stripes.length; i++) {
+        stripes[i] = new ReentrantReadWriteLock();
+      }
+    }
+    private final java.util.concurrent.locks.Lock stripe;
     private File file;
     private FileLock fileLock;
-    private FileInputStream streamIn;
+    private Reader reader;
+    private InputStream streamIn;
     private FileOutputStream streamOut;
     private FileChannel channel;
 
-    Lock(File file, boolean read, boolean create) throws IOException {
-      this.file = file;
-      this.lockName = file.getAbsolutePath();
-      synchronized (locks) {
-        while (true) {
-          try {
-            if (!locks.contains(lockName)) {
-              locks.add(lockName);
-              break;
-            } else {
-              locks.wait();
-            }
-          } catch (Throwable t) {}
+    private static class Reader {
+      private final String path;
+      private FileInputStream stream;
+      private FileLock fileLock;
+      private int references;
+
+      Reader(String path) {
+        this.path = path;
+      }
+    }
+
+    private static Reader acquire(File file) throws IOException {
+      final String path = file.getAbsolutePath();
+      Reader reader;
+      synchronized (readers) {
+        reader = readers.get(path);
+        if (reader == null) {
+          reader = new Reader(path);
+          readers.put(path, reader);
+        }
+        ++reader.references;
+      }
+      try {
+        synchronized (reader) {
+          if (reader.fileLock == null) {
+            reader.stream = new FileInputStream(file);
+            reader.fileLock = reader.stream.getChannel().lock(0, Long.MAX_VALUE, true);
+          }
         }
+      } catch (IOException | RuntimeException e) {
+        release(reader);
+        throw e;
       }
+      return reader;
+    }
+
+    private static void release(Reader reader) {
+      synchronized (readers) {
+        if (--reader.references > 0) {
+          return;
+        }
+        readers.remove(reader.path);
+      }
+      if (reader.fileLock != null) {
+        try {
+          reader.fileLock.release();
+        } catch (Throwable t) {
+          LogsServer.instance().exception(t);
+        }
+      }
+      Util.close(reader.stream);
+    }
+
+    /**
+     * Reads a file from the start through a channel, without moving or closing the channel.
+     */
+    private static class ChannelInputStream extends InputStream {
+      private final FileChannel channel;
+      private long position;
+
+      ChannelInputStream(FileChannel channel) {
+        this.channel = channel;
+      }
+
+      @Override
+      public int read() throws IOException {
+        byte[] bytes = new byte[1];
+        return read(bytes, 0, 1) == -1 ? -1 : bytes[0] & 0xff;
+      }
+
+      @Override
+      public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+          return 0;
+        }
+        int read = channel.read(ByteBuffer.wrap(bytes, offset, length), position);
+        if (read > 0) {
+          position += read;
+        }
+        return read;
+      }
+    }
+
+    Lock(File file, boolean read, boolean create, boolean shared) throws IOException {
+      this.file = file;
+      ReadWriteLock readWriteLock = stripes[(file.getAbsolutePath().hashCode() & 0x7fffffff) % stripes.length];
+      stripe = read ? readWriteLock.readLock() : readWriteLock.writeLock();
+      stripe.lock();
       for (int i = 0; i < MAX_RETRIES; i++) {
         if (i > 0) {
           try {
-            Thread.sleep(RETRY_SLEEP);
+            Thread.sleep(Math.min(MAX_RETRY_SLEEP, 1 << i));
           } catch (InterruptedException e2) {}
         }
         try {
           if (create) {
             file.createNewFile();
           }
-          if (read) {
+          if (read && shared) {
+            reader = acquire(file);
+            streamIn = new ChannelInputStream(reader.stream.getChannel());
+          } else if (read) {
             streamIn = new FileInputStream(file);
-            channel = streamIn.getChannel();
           } else {
             streamOut = new FileOutputStream(file);
             channel = streamOut.getChannel();
+            if (shared) {
+              fileLock = channel.lock(0, Long.MAX_VALUE, false);
+            }
           }
-          fileLock = channel.lock(0, Long.MAX_VALUE, read);
           break;
         } catch (Throwable t) {
           if (!create && t instanceof FileNotFoundException) {
@@ -161,6 +263,10 @@ class HttpCache implements HttpCacheStorage {
     }
 
     private void closeStreams() {
+      if (reader != null) {
+        release(reader);
+        reader = null;
+      }
       if (streamIn != null) {
         try {
           streamIn.close();
@@ -190,10 +296,7 @@ class HttpCache implements HttpCacheStorage {
         }
       }
       closeStreams();
-      synchronized (locks) {
-        locks.remove(lockName);
-        locks.notifyAll();
-      }
+      stripe.unlock();
     }
   }
 }
@@ -17,20 +17,29 @@
  */
 package com.machinepublishers.jbrowserdriver;
 
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
 
 import com.sun.javafx.webkit.Accessor;
 import com.sun.webkit.LoadListenerClient;
 
+import netscape.javascript.JSObject;
+
 class HttpListener implements LoadListenerClient {
   private static final Map<Integer, String> states;
   private static final Map<Integer, String> errors;
+  private static final Pattern framePrefix = Pattern.compile("^-?[0-9]+");
+  private static final String bridgeName = Util.randomPropertyName();
 
   static {
     Map<Integer, String> statesTmp = new HashMap<Integer, String>();
@@ -70,39 +79,64 @@ class HttpListener implements LoadListenerClient {
 
   private final Map<String, Long> resources = new HashMap<String, Long>();
   private final ContextItem contextItem;
+  private final Session session;
   private final StatusCode statusCode;
   private final AtomicLong timeoutMS;
   private final StatusMonitor statusMonitor;
   private final LogsServer logs;
-  private final AtomicReference<Thread> ajaxListenerThread = new AtomicReference<Thread>();
   private final AjaxListener ajaxListener;
   private final AtomicInteger newStatusCode = new AtomicInteger();
   private final AtomicBoolean started = new AtomicBoolean();
+  private final AtomicLong navigation = new AtomicLong();
+  private final AtomicReference<PageLoadStrategy> strategy = new AtomicReference<PageLoadStrategy>(PageLoadStrategy.NORMAL);
 
   HttpListener(ContextItem contextItem, StatusCode statusCode, AtomicLong timeoutMS) {
     this.contextItem = contextItem;
+    this.session = contextItem.session;
     this.statusCode = statusCode;
     this.timeoutMS = timeoutMS;
-    this.statusMonitor = StatusMonitor.instance();
-    this.logs = LogsServer.instance();
-    this.ajaxListener = new AjaxListener(
+    this.statusMonitor = session.statusMonitor;
+    this.logs = session.logs;
+    this.ajaxListener = new AjaxListener(contextItem,
         this.started, this.newStatusCode, this.statusCode, this.resources, this.timeoutMS.get());
+    statusMonitor.addListener(this);
   }
 
-  void init() {
-    this.ajaxListenerThread.set(new Thread(ajaxListener));
-    this.ajaxListenerThread.get().setDaemon(true);
-    this.ajaxListenerThread.get().start();
+  /**
+   * @return The requests which finished last, or were still pending, when the page last finished loading
+   */
+  List<ResourceDelay> delays() {
+    return ajaxListener.delays();
   }
 
-  @Override
-  protected void finalize() throws Throwable {
-    try {
-      super.finalize();
-    } catch (Throwable t) {}
+  /**
+   * Stops waiting for requests which are excluded from page loading by the content type of their response.
+   */
+  void responded(String url, String contentType) {
+    final Settings settings = session.settings();
+    if (settings != null && settings.ajaxIgnored(url, contentType)) {
+      final String normalized = normalize(url);
+      synchronized (statusCode) {
+        for (Iterator<String> it = resources.keySet().iterator(); it.hasNext();) {
+          String resource = it.next();
+          //resources are keyed by their frame followed by their URL
+          if (normalized.equals(normalize(framePrefix.matcher(resource).replaceFirst("")))) {
+            it.remove();
+            ajaxListener.resourceFinished(resource, false);
+          }
+        }
+      }
+    }
+  }
+
+  private static String normalize(String url) {
+    int fragment = url.indexOf('#');
+    String withoutFragment = fragment == -1 ? url : url.substring(0, fragment);
     try {
-      this.ajaxListenerThread.get().interrupt();
-    } catch (Throwable t) {}
+      return new URI(withoutFragment).normalize().toString();
+    } catch (URISyntaxException e) {
+      return withoutFragment;
+    }
   }
 
   private void trace(String label, long frame, int state, String url,
@@ -126,21 +160,26 @@ class HttpListener implements LoadListenerClient {
   @Override
   public void dispatchResourceLoadEvent(long frame, int state, String url,
       String contentType, double progress, int errorCode) {
-    final Settings settings = SettingsManager.settings();
+    final Settings settings = session.settings();
     if (settings == null) {
       throw new RuntimeException("Request made after browser closed. Ignoring...");
     }
     synchronized (statusCode) {
       if (url.startsWith("http://") || url.startsWith("https://")) {
         if (state == LoadListenerClient.RESOURCE_STARTED) {
-          resources.put(frame + url, System.currentTimeMillis());
+          if (!settings.ajaxIgnored(url, contentType)) {
+            resources.put(frame + url, System.currentTimeMillis());
+            ajaxListener.resourceStarted(frame + url, url);
+          }
         } else if (state == LoadListenerClient.RESOURCE_FINISHED
             || state == LoadListenerClient.RESOURCE_FAILED) {
           String original = null;
           original = statusMonitor.originalFromRedirect(url);
           resources.remove(frame + url);
+          ajaxListener.resourceFinished(frame + url, true);
           if (original != null) {
             resources.remove(frame + original);
+            ajaxListener.resourceFinished(frame + original, true);
           }
         }
       }
@@ -152,12 +191,24 @@ class HttpListener implements LoadListenerClient {
   }
 
   void resetStatusCode() {
+    final Settings settings = session.settings();
+    resetStatusCode(settings == null ? null : settings.pageLoadStrategy());
+  }
+
+  /**
+   * @param strategy
+   *          How long to wait for the next page to load, or <code>null</code> for {@link PageLoadStrategy#NORMAL}
+   */
+  void resetStatusCode(PageLoadStrategy strategy) {
     synchronized (statusCode) {
+      this.strategy.set(strategy == null ? PageLoadStrategy.NORMAL : strategy);
+      navigation.incrementAndGet();
       newStatusCode.set(0);
       statusCode.set(0);
       resources.clear();
       started.set(false);
-      StatusMonitor.instance().clear();
+      statusMonitor.clear();
+      ajaxListener.start();
       statusCode.notifyAll();
     }
   }
@@ -168,22 +219,31 @@ class HttpListener implements LoadListenerClient {
   @Override
   public void dispatchLoadEvent(final long frame, final int state, String url,
       String contentType, double progress, int errorCode) {
-    final Settings settings = SettingsManager.settings();
+    final Settings settings = session.settings();
     if (settings == null) {
       throw new RuntimeException("Request made after browser closed. Ignoring...");
     }
     final long mainFrame = Accessor.getPageFor(contextItem.engine.get()).getMainFrame();
     synchronized (statusCode) {
       if (state == LoadListenerClient.PAGE_STARTED && settings.logJavascript()) {
-        JavascriptLog.attach(Accessor.getPageFor(contextItem.engine.get()), frame);
+        JavascriptLog.attach(Accessor.getPageFor(contextItem.engine.get()), frame, logs);
       }
       if (state == LoadListenerClient.PAGE_STARTED
           || state == LoadListenerClient.PAGE_REDIRECTED
           || state == LoadListenerClient.DOCUMENT_AVAILABLE) {
         started.set(true);
         resources.put(frame + url, System.currentTimeMillis());
+        ajaxListener.resourceStarted(frame + url, url);
         statusMonitor.monitor(url);
         statusMonitor.addPrimaryDocument(mainFrame == frame, url);
+        if (state == LoadListenerClient.DOCUMENT_AVAILABLE && mainFrame == frame) {
+          ajaxListener.install(frame);
+          if (strategy.get() == PageLoadStrategy.NONE) {
+            loaded(navigation.get(), url);
+          } else if (strategy.get() == PageLoadStrategy.EAGER) {
+            awaitContentLoaded(frame, url);
+          }
+        }
       } else if (state == LoadListenerClient.PAGE_FINISHED
           || state == LoadListenerClient.LOAD_STOPPED
           || state == LoadListenerClient.LOAD_FAILED) {
@@ -193,9 +253,11 @@ class HttpListener implements LoadListenerClient {
           newStatusCode.compareAndSet(0, statusMonitor.status(url));
         }
         resources.remove(frame + url);
+        ajaxListener.resourceFinished(frame + url, true);
         String original = statusMonitor.originalFromRedirect(url);
         if (original != null) {
           resources.remove(frame + original);
+          ajaxListener.resourceFinished(frame + original, true);
         }
       }
     }
@@ -204,4 +266,55 @@ class HttpListener implements LoadListenerClient {
     }
   }
 
+  /**
+   * Finishes waiting for the current page before its subresources have loaded.
+   * Pending requests are still tracked so that they're reported by {@link #delays()}.
+   */
+  private void loaded(long navigation, String url) {
+    synchronized (statusCode) {
+      if (this.navigation.get() == navigation && statusCode.get() == 0 && started.get()) {
+        statusCode.set(statusMonitor.status(url));
+        statusCode.notifyAll();
+      }
+    }
+  }
+
+  private void awaitContentLoaded(long frame, String url) {
+    try {
+      JSObject window = (JSObject) Accessor.getPageFor(contextItem.engine.get())
+          .executeScript(frame, "(function(){return window;})();");
+      if (window != null) {
+        window.setMember(bridgeName, new Bridge(this, navigation.get(), url));
+        Accessor.getPageFor(contextItem.engine.get()).executeScript(frame, new StringBuilder()
+            .append("(function(){")
+            .append("var bridge=window.").append(bridgeName).append(";")
+            .append("try{delete window.").append(bridgeName).append(";}catch(ex){}")
+            .append("if(document.readyState!=='loading'){bridge.loaded();return;}")
+            .append("document.addEventListener('DOMContentLoaded',function(){bridge.loaded();});")
+            .append("})();").toString());
+      }
+    } catch (Throwable t) {
+      logs.exception(t);
+    }
+  }
+
+  /**
+   * Notified by the page once its main document is parsed, when using {@link PageLoadStrategy#EAGER}.
+   */
+  public static class Bridge {
+    private final HttpListener listener;
+    private final long navigation;
+    private final String url;
+
+    private Bridge(HttpListener listener, long navigation, String url) {
+      this.listener = listener;
+      this.navigation = navigation;
+      this.url = url;
+    }
+
+    public void loaded() {
+      listener.loaded(navigation, url);
+    }
+  }
+
 }
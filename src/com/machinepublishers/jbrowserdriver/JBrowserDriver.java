@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
@@ -31,13 +32,16 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
-import java.util.LinkedHashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
 import java.util.jar.Attributes;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
@@ -47,6 +51,7 @@ import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.openqa.selenium.By;
@@ -81,7 +86,7 @@ import io.github.lukehutch.fastclasspathscanner.FastClasspathScanner;
  * <p>
  * Licensed under the Apache License version 2.0.
  */
-public class JBrowserDriver extends RemoteWebDriver implements Killable {
+public class JBrowserDriver extends RemoteWebDriver implements Killable, BatchExecutor {
 
   //TODO handle jbd.fork=false
 
@@ -92,20 +97,21 @@ public class JBrowserDriver extends RemoteWebDriver implements Killable {
    */
   @Deprecated
   public static final String KEYBOARD_DELETE = Util.KEYBOARD_DELETE;
-  private static final Set<SocketLock> locks = new HashSet<SocketLock>();
-  private static final Set<Job> waiting = new LinkedHashSet<Job>();
-  private static final Set<PortGroup> portGroupsActive = new LinkedHashSet<PortGroup>();
   private static final String JAVA_BIN;
   private static final List<String> inheritedArgs;
   private static volatile List<String> classpathSimpleArgs;
   private static volatile List<String> classpathUnpackedArgs;
   private static final AtomicReference<List<String>> classpathArgs = new AtomicReference<>();
+  private static final AtomicReference<File> classpathDir = new AtomicReference<File>();
   private static final AtomicBoolean firstLaunch = new AtomicBoolean(true);
   private static final Set<String> filteredLogs = Collections.unmodifiableSet(
       new HashSet<String>(Arrays.asList(new String[] {
           "Warning: Single GUI Threadiong is enabled, FPS should be slower"
       })));
   private static final AtomicLong sessionIdCounter = new AtomicLong();
+  private static final AtomicReference<File> socketDir = new AtomicReference<File>();
+  private static final Map<AtomicBoolean, JBrowserDriverRemote> processRemotes = new IdentityHashMap<AtomicBoolean, JBrowserDriverRemote>();
+  private static CacheStats endedCacheStats = new CacheStats(0, 0, 0, 0, 0, 0);
 
   static {
     List<String> inheritedArgsTmp = new ArrayList<String>();
@@ -128,13 +134,21 @@ public class JBrowserDriver extends RemoteWebDriver implements Killable {
 
   }
 
-  private static void initClasspath() {
+  private static void initClasspath(Settings settings) {
     List<String> classpathSimpleTmp = new ArrayList<String>();
     List<String> classpathUnpackedTmp = new ArrayList<String>();
     try {
       List<File> classpathElements = new FastClasspathScanner().getUniqueClasspathElements();
-      final File classpathDir = Files.createTempDirectory("jbd_classpath_").toFile();
-      Runtime.getRuntime().addShutdownHook(new FileRemover(classpathDir));
+      final boolean cached = settings.classpathCacheDir() != null;
+      final File classpathDir;
+      if (cached) {
+        classpathDir = settings.classpathCacheDir().getAbsoluteFile();
+        classpathDir.mkdirs();
+      } else {
+        classpathDir = Files.createTempDirectory("jbd_classpath_").toFile();
+        Runtime.getRuntime().addShutdownHook(new FileRemover(classpathDir));
+      }
+      JBrowserDriver.classpathDir.set(classpathDir);
       List<String> pathsSimple = new ArrayList<String>();
       List<String> pathsUnpacked = new ArrayList<String>();
       for (File curElement : classpathElements) {
@@ -147,20 +161,38 @@ public class JBrowserDriver extends RemoteWebDriver implements Killable {
             while (entries.hasMoreElements()) {
               ZipEntry entry = entries.nextElement();
               if (entry.getName().endsWith(".jar")) {
-                try (InputStream in = jar.getInputStream(entry)) {
-                  File childJar = new File(classpathDir,
-                      Util.randomFileName() + ".jar");
-                  Files.copy(in, childJar.toPath());
+                if (cached) {
+                  //named after the checksum and size of its contents, as recorded by the outer jar
+                  File childJar = new File(classpathDir, new StringBuilder().append("jar-")
+                      .append(DigestUtils.sha256Hex(entry.getCrc() + "/" + entry.getSize() + "/" + entry.getName()))
+                      .append(".jar").toString());
+                  if (childJar.length() != entry.getSize()) {
+                    File staged = new File(classpathDir, Util.randomFileName() + ".tmp");
+                    try (InputStream in = jar.getInputStream(entry)) {
+                      Files.copy(in, staged.toPath());
+                      Files.move(staged.toPath(), childJar.toPath(),
+                          StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    } finally {
+                      staged.delete();
+                    }
+                  }
                   pathsUnpacked.add(childJar.getAbsoluteFile().toURI().toURL().toExternalForm());
-                  childJar.deleteOnExit();
+                } else {
+                  try (InputStream in = jar.getInputStream(entry)) {
+                    File childJar = new File(classpathDir,
+                        Util.randomFileName() + ".jar");
+                    Files.copy(in, childJar.toPath());
+                    pathsUnpacked.add(childJar.getAbsoluteFile().toURI().toURL().toExternalForm());
+                    childJar.deleteOnExit();
+                  }
                 }
               }
             }
           }
         }
       }
-      classpathSimpleTmp = createClasspathJar(classpathDir, "classpath-simple.jar", pathsSimple);
-      classpathUnpackedTmp = createClasspathJar(classpathDir, "classpath-unpacked.jar", pathsUnpacked);
+      classpathSimpleTmp = createClasspathJar(classpathDir, "classpath-simple", pathsSimple, cached);
+      classpathUnpackedTmp = createClasspathJar(classpathDir, "classpath-unpacked", pathsUnpacked, cached);
     } catch (Throwable t) {
       Util.handleException(t);
     }
@@ -168,64 +200,97 @@ public class JBrowserDriver extends RemoteWebDriver implements Killable {
     classpathUnpackedArgs = Collections.unmodifiableList(classpathUnpackedTmp);
   }
 
-  private static List<String> createClasspathJar(File dir, String jarName, List<String> manifestClasspath)
-      throws IOException {
+  /**
+   * @param cached
+   *          Whether the jar is kept after exit, in which case it's named after its classpath
+   *          so that it's reused by JVMs with the same classpath
+   */
+  private static List<String> createClasspathJar(File dir, String jarName, List<String> manifestClasspath,
+      boolean cached) throws IOException {
     List<String> classpathArgs = new ArrayList<String>();
     Manifest manifest = new Manifest();
     manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
-    manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH,
-        StringUtils.join(manifestClasspath, ' '));
-    File classpathJar = new File(dir, jarName);
-    classpathJar.deleteOnExit();
-    try (JarOutputStream stream = new JarOutputStream(
-        new FileOutputStream(classpathJar), manifest)) {}
+    String manifestClasspathJoined = StringUtils.join(manifestClasspath, ' ');
+    manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, manifestClasspathJoined);
+    File classpathJar;
+    if (cached) {
+      classpathJar = new File(dir, jarName + "-" + DigestUtils.sha256Hex(manifestClasspathJoined) + ".jar");
+      if (!classpathJar.isFile()) {
+        File staged = new File(dir, Util.randomFileName() + ".tmp");
+        try {
+          writeManifestJar(staged, manifest);
+          Files.move(staged.toPath(), classpathJar.toPath(),
+              StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+          staged.delete();
+        }
+      }
+    } else {
+      classpathJar = new File(dir, jarName + ".jar");
+      classpathJar.deleteOnExit();
+      writeManifestJar(classpathJar, manifest);
+    }
     classpathArgs.add("-classpath");
     classpathArgs.add(classpathJar.getCanonicalPath());
     return classpathArgs;
   }
 
-  static {
-    Thread work = new Thread(new Runnable() {
-      @Override
-      public void run() {
-        synchronized (waiting) {
-          while (true) {
-            List<Job> selectedJobs = new ArrayList<Job>();
-            for (Job job : waiting) {
-              for (PortGroup curPortGroup : job.settings.portGroups()) {
-                boolean conflicts = false;
-                for (PortGroup curUsed : portGroupsActive) {
-                  if (curUsed.conflicts(curPortGroup)) {
-                    conflicts = true;
-                    break;
-                  }
-                }
-                if (!conflicts) {
-                  job.portGroup.set(curPortGroup);
-                  break;
-                }
-              }
-              if (job.portGroup.get() != null) {
-                selectedJobs.add(job);
-                portGroupsActive.add(job.portGroup.get());
-              }
-            }
-            for (Job job : selectedJobs) {
-              waiting.remove(job);
-              synchronized (job) {
-                job.notifyAll();
-              }
-            }
-            try {
-              waiting.wait();
-            } catch (InterruptedException e) {}
-          }
+  private static void writeManifestJar(File file, Manifest manifest) throws IOException {
+    try (JarOutputStream stream = new JarOutputStream(new FileOutputStream(file), manifest)) {
+      stream.finish();
+    }
+  }
+
+  /**
+   * Unix domain socket for the process using the given ports. The path only depends on the ports
+   * (which are unique per process slot) because RMI keeps reusing the first connection factory
+   * it saw for a given endpoint.
+   */
+  private static File socketFile(PortGroup portGroup) {
+    synchronized (socketDir) {
+      if (socketDir.get() == null) {
+        try {
+          File dir = Files.createTempDirectory("jbd_sockets_").toFile();
+          Runtime.getRuntime().addShutdownHook(new FileRemover(dir));
+          socketDir.set(dir);
+        } catch (Throwable t) {
+          Util.handleException(t);
         }
       }
-    });
-    work.setDaemon(true);
-    work.setName("JBrowserDriver queued instance handler");
-    work.start();
+    }
+    return new File(socketDir.get(), "browser" + Math.abs(portGroup.child) + ".sock");
+  }
+
+  /**
+   * Statistics about browsers waiting for a port group (see {@link Settings.Builder#processes(int)})
+   * before their processes can launch.
+   * 
+   * @return Statistics of this JVM since it started.
+   */
+  public static ProcessQueueStats processQueueStats() {
+    return PortAllocator.stats();
+  }
+
+  /**
+   * Statistics about the web cache (see {@link Settings.Builder#cache(boolean)}) of all browser processes
+   * launched by this JVM: those running, and those which ended after {@link #quit()}.
+   * 
+   * @return Statistics of this JVM since it started.
+   * @see #cacheStats()
+   */
+  public static CacheStats totalCacheStats() {
+    List<JBrowserDriverRemote> remotes;
+    CacheStats total;
+    synchronized (processRemotes) {
+      remotes = new ArrayList<JBrowserDriverRemote>(processRemotes.values());
+      total = endedCacheStats;
+    }
+    for (JBrowserDriverRemote remote : remotes) {
+      try {
+        total = total.add(remote.cacheStats());
+      } catch (Throwable t) {}
+    }
+    return total;
   }
 
   /**
@@ -238,16 +303,22 @@ public class JBrowserDriver extends RemoteWebDriver implements Killable {
   }
 
   private final JBrowserDriverRemote remote;
+  private final CommandClient commands;
   private final Logs logs;
-  private final AtomicReference<Process> process = new AtomicReference<Process>();
-  private final AtomicBoolean processEnded = new AtomicBoolean();
-  private final AtomicReference<PortGroup> configuredPortGroup = new AtomicReference<PortGroup>();
-  private final AtomicReference<PortGroup> actualPortGroup = new AtomicReference<PortGroup>();
+  private final AtomicReference<Process> process;
+  private final AtomicBoolean processEnded;
+  private final AtomicReference<PortGroup> configuredPortGroup;
+  private final AtomicReference<PortGroup> actualPortGroup;
   private final AtomicReference<OptionsLocal> options = new AtomicReference<OptionsLocal>();
   private final SessionId sessionId;
   private final SocketLock lock = new SocketLock();
+  private final AtomicReference<SocketFactory> socketFactory;
   private final File tmpDir;
   private final FileRemover shutdownHook;
+  private final AtomicBoolean leased = new AtomicBoolean();
+  private final SharedProcess shared;
+  private final AtomicBoolean sessionEnded = new AtomicBoolean();
+  private final AtomicReference<CacheStats> cacheStats = new AtomicReference<CacheStats>();
 
   /**
    * Constructs a browser with default settings, UTC timezone, and no proxy.
@@ -264,7 +335,8 @@ public class JBrowserDriver extends RemoteWebDriver implements Killable {
    * @param capabilities
    */
   public JBrowserDriver(Capabilities capabilities) {
-    this(Settings.builder().build(capabilities));
+    //settings built from capabilities are never reused, so there'd be no pool to lease from
+    this(Settings.builder().build(capabilities), null, null);
     if (!(capabilities instanceof Serializable)) {
       capabilities = new DesiredCapabilities(capabilities);
     }
@@ -283,84 +355,147 @@ public class JBrowserDriver extends RemoteWebDriver implements Killable {
    * @param settings
    */
   public JBrowserDriver(final Settings settings) {
-    synchronized (locks) {
-      locks.add(lock);
-    }
-    File tmpDir = null;
-    try {
-      tmpDir = Files.createTempDirectory("jbd_tmp_").toFile();
-    } catch (Throwable t) {
-      Util.handleException(t);
-    }
-    this.tmpDir = tmpDir;
-    this.shutdownHook = new FileRemover(tmpDir);
-    Runtime.getRuntime().addShutdownHook(shutdownHook);
+    this(settings, SharedProcess.attach(settings));
+  }
 
-    final Job job = new Job(settings, configuredPortGroup);
-    synchronized (waiting) {
-      waiting.add(job);
-      waiting.notifyAll();
-    }
-    synchronized (job) {
-      while (configuredPortGroup.get() == null) {
-        try {
-          job.wait();
-        } catch (InterruptedException e) {}
+  private JBrowserDriver(final Settings settings, final SharedProcess shared) {
+    this(settings, shared == null ? ProcessPool.lease(settings) : null, shared);
+  }
+
+  /**
+   * @param settings
+   * @param spare
+   *          A browser from the {@link ProcessPool} whose process this browser takes over,
+   *          or <code>null</code>
+   * @param shared
+   *          A process in which this browser opens a new session, or <code>null</code>
+   *          to launch a new process when there's no spare
+   */
+  JBrowserDriver(final Settings settings, final JBrowserDriver spare, final SharedProcess shared) {
+    if (spare != null) {
+      spare.leased.set(true);
+      this.process = spare.process;
+      this.processEnded = spare.processEnded;
+      this.configuredPortGroup = spare.configuredPortGroup;
+      this.actualPortGroup = spare.actualPortGroup;
+      this.socketFactory = spare.socketFactory;
+      this.sessionId = spare.sessionId;
+      this.tmpDir = spare.tmpDir;
+      this.shutdownHook = spare.shutdownHook;
+      this.remote = spare.remote;
+      this.commands = spare.commands;
+      this.shared = spare.shared;
+    } else if (shared != null) {
+      final JBrowserDriver owner = shared.owner();
+      this.process = owner.process;
+      this.processEnded = owner.processEnded;
+      this.configuredPortGroup = owner.configuredPortGroup;
+      this.actualPortGroup = owner.actualPortGroup;
+      this.socketFactory = owner.socketFactory;
+      this.tmpDir = owner.tmpDir;
+      this.shutdownHook = owner.shutdownHook;
+      this.shared = shared;
+      SessionId sessionIdTmp = null;
+      JBrowserDriverRemote instanceTmp = null;
+      CommandClient commandsTmp = null;
+      try {
+        synchronized (lock.validated()) {
+          instanceTmp = owner.remote.newSession(settings);
+          final int handle = instanceTmp.handle();
+          sessionIdTmp = new SessionId(new StringBuilder()
+              .append(owner.sessionId).append("[Session ").append(CommandProtocol.DRIVER - handle).append("]").toString());
+          commandsTmp = new CommandClient(socketFactory.get(), instanceTmp, handle);
+          if (settings.binaryProtocol()) {
+            instanceTmp = commandsTmp.driver();
+          }
+        }
+      } catch (Throwable t) {
+        endProcess();
+        Util.handleException(t);
       }
-    }
-    SessionId sessionIdTmp = null;
-    if (!settings.customClasspath()) {
-      synchronized (firstLaunch) {
-        if (firstLaunch.compareAndSet(true, false)) {
-          initClasspath();
-          classpathArgs.set(classpathUnpackedArgs);
-          sessionIdTmp = new SessionId(launchProcess(settings, configuredPortGroup.get()));
-          if (actualPortGroup.get() == null) {
-            classpathArgs.set(classpathSimpleArgs);
+      sessionId = sessionIdTmp;
+      remote = instanceTmp;
+      commands = commandsTmp;
+    } else {
+      this.process = new AtomicReference<Process>();
+      this.processEnded = new AtomicBoolean();
+      this.configuredPortGroup = new AtomicReference<PortGroup>();
+      this.actualPortGroup = new AtomicReference<PortGroup>();
+      this.socketFactory = new AtomicReference<SocketFactory>();
+      File tmpDir = null;
+      try {
+        tmpDir = Files.createTempDirectory("jbd_tmp_").toFile();
+      } catch (Throwable t) {
+        Util.handleException(t);
+      }
+      this.tmpDir = tmpDir;
+      this.shutdownHook = new FileRemover(tmpDir);
+      Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+      PortAllocator.acquire(new Job(settings, configuredPortGroup));
+      SessionId sessionIdTmp = null;
+      if (!settings.customClasspath()) {
+        synchronized (firstLaunch) {
+          if (firstLaunch.compareAndSet(true, false)) {
+            initClasspath(settings);
+            classpathArgs.set(classpathUnpackedArgs);
+            sessionIdTmp = new SessionId(launchProcess(settings, configuredPortGroup.get()));
+            if (actualPortGroup.get() == null) {
+              classpathArgs.set(classpathSimpleArgs);
+            }
           }
         }
       }
-    }
-    if (actualPortGroup.get() == null) {
-      sessionIdTmp = new SessionId(launchProcess(settings, configuredPortGroup.get()));
-    }
-    sessionId = sessionIdTmp;
-    if (actualPortGroup.get() == null) {
-      endProcess();
-      Util.handleException(new IllegalStateException("Could not launch browser."));
-    }
-    HeartbeatRemote heartbeatTmp = null;
-    JBrowserDriverRemote instanceTmp = null;
-    try {
-      synchronized (lock.validated()) {
-        Registry registry = LocateRegistry
-            .getRegistry(settings.host(), (int) actualPortGroup.get().child,
-                new SocketFactory(settings.host(), actualPortGroup.get(), locks));
-        heartbeatTmp = (HeartbeatRemote) registry.lookup("HeartbeatRemote");
-        instanceTmp = (JBrowserDriverRemote) registry.lookup("JBrowserDriverRemote");
-        instanceTmp.setUp(settings);
+      if (actualPortGroup.get() == null) {
+        sessionIdTmp = new SessionId(launchProcess(settings, configuredPortGroup.get()));
       }
-    } catch (Throwable t) {
-      Util.handleException(t);
-    }
-    final HeartbeatRemote heartbeat = heartbeatTmp;
-    new Thread(new Runnable() {
-      @Override
-      public void run() {
-        while (true) {
-          if (processEnded.get()) {
-            return;
+      sessionId = sessionIdTmp;
+      if (actualPortGroup.get() == null) {
+        endProcess();
+        Util.handleException(new IllegalStateException("Could not launch browser."));
+      }
+      HeartbeatRemote heartbeatTmp = null;
+      JBrowserDriverRemote instanceTmp = null;
+      CommandClient commandsTmp = null;
+      try {
+        synchronized (lock.validated()) {
+          socketFactory.set(new SocketFactory(settings.host(), actualPortGroup.get(),
+              settings.unixSocket() ? socketFile(configuredPortGroup.get()) : null));
+          Registry registry = LocateRegistry
+              .getRegistry(settings.host(), (int) actualPortGroup.get().child, socketFactory.get());
+          heartbeatTmp = (HeartbeatRemote) registry.lookup("HeartbeatRemote");
+          instanceTmp = (JBrowserDriverRemote) registry.lookup("JBrowserDriverRemote");
+          instanceTmp.setUp(settings);
+          commandsTmp = new CommandClient(socketFactory.get(), instanceTmp, CommandProtocol.DRIVER);
+          if (settings.binaryProtocol()) {
+            instanceTmp = commandsTmp.driver();
           }
-          try {
-            heartbeat.heartbeat();
-          } catch (RemoteException e) {}
-          try {
-            Thread.sleep(5000);
-          } catch (InterruptedException e) {}
         }
+      } catch (Throwable t) {
+        Util.handleException(t);
       }
-    }).start();
-    remote = instanceTmp;
+      final HeartbeatRemote heartbeat = heartbeatTmp;
+      new Thread(new Runnable() {
+        @Override
+        public void run() {
+          while (true) {
+            if (processEnded.get()) {
+              return;
+            }
+            try {
+              heartbeat.heartbeat();
+            } catch (RemoteException e) {}
+            try {
+              Thread.sleep(5000);
+            } catch (InterruptedException e) {}
+          }
+        }
+      }).start();
+      remote = instanceTmp;
+      commands = commandsTmp;
+      this.shared = SharedProcess.register(settings, this);
+      register(processEnded, remote);
+    }
     LogsRemote logsRemote = null;
     try {
       synchronized (lock.validated()) {
@@ -372,11 +507,37 @@ public class JBrowserDriver extends RemoteWebDriver implements Killable {
     logs = new Logs(logsRemote, lock);
   }
 
+  /**
+   * Makes a newly launched browser process's statistics part of {@link #totalCacheStats()}.
+   * They're asked of the process's first session, which can still answer after it has quit.
+   */
+  private static void register(AtomicBoolean processEnded, JBrowserDriverRemote remote) {
+    if (remote != null) {
+      synchronized (processRemotes) {
+        if (!processEnded.get()) {
+          processRemotes.put(processEnded, remote);
+        }
+      }
+    }
+  }
+
+  /**
+   * Whether this browser's process is still running, so that it can be leased from the {@link ProcessPool}.
+   */
+  boolean isAlive() {
+    Process proc = process.get();
+    return !processEnded.get() && proc != null && proc.isAlive();
+  }
+
   @Override
   protected void finalize() throws Throwable {
     try {
       super.finalize();
     } catch (Throwable t) {}
+    if (leased.get() || (shared != null && !processEnded.get())) {
+      //the process and its files now belong to another browser
+      return;
+    }
     try {
       Runtime.getRuntime().removeShutdownHook(shutdownHook);
       shutdownHook.run();
@@ -386,14 +547,20 @@ public class JBrowserDriver extends RemoteWebDriver implements Killable {
   private String launchProcess(final Settings settings, final PortGroup portGroup) {
     final AtomicBoolean ready = new AtomicBoolean();
     final AtomicReference<String> logPrefix = new AtomicReference<String>("");
+    final List<String> classDataOptions = new ArrayList<String>();
+    final long launched = System.nanoTime();
     new Thread(new Runnable() {
       @Override
       public void run() {
         List<String> myArgs = new ArrayList<String>();
-        myArgs.add(settings.javaBinary() == null ? JAVA_BIN : settings.javaBinary());
+        final String javaBinary = settings.javaBinary() == null ? JAVA_BIN : settings.javaBinary();
+        myArgs.add(javaBinary);
         myArgs.addAll(inheritedArgs);
         if (!settings.customClasspath()) {
           myArgs.addAll(classpathArgs.get());
+          classDataOptions.addAll(ClassDataSharing.options(
+              settings, javaBinary, classpathDir.get(), classpathArgs.get(), tmpDir));
+          myArgs.addAll(classDataOptions);
         }
         if (settings.javaExportModules()) {
           myArgs.add("-XaddExports:javafx.web/com.sun.webkit.network=ALL-UNNAMED");
@@ -413,9 +580,17 @@ public class JBrowserDriver extends RemoteWebDriver implements Killable {
         myArgs.add("-Djava.rmi.server.hostname=" + settings.host());
         myArgs.addAll(settings.javaOptions());
         myArgs.add(JBrowserDriverServer.class.getName());
-        myArgs.add(Long.toString(portGroup.child));
-        myArgs.add(Long.toString(portGroup.parent));
-        myArgs.add(Long.toString(portGroup.parentAlt));
+        if (settings.unixSocket()) {
+          //the child port only identifies the endpoint to RMI
+          myArgs.add(Long.toString(Math.abs(portGroup.child)));
+          myArgs.add("-1");
+          myArgs.add("-1");
+          myArgs.add(socketFile(portGroup).getAbsolutePath());
+        } else {
+          myArgs.add(Long.toString(portGroup.child));
+          myArgs.add(Long.toString(portGroup.parent));
+          myArgs.add(Long.toString(portGroup.parentAlt));
+        }
         try {
           new ProcessExecutor()
               .addListener(new ProcessListener() {
@@ -443,6 +618,12 @@ public class JBrowserDriver extends RemoteWebDriver implements Killable {
                               .append(actualPortGroup.get().child)
                               .append("]")
                               .toString());
+                          log(settings.logger(), logPrefix.get(), new StringBuilder()
+                              .append(">FINE/launchProcess/Browser process started in ")
+                              .append(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - launched))
+                              .append(" ms (class data sharing ")
+                              .append(ClassDataSharing.mode(classDataOptions))
+                              .append(")").toString());
                           ready.set(true);
                           ready.notifyAll();
                           done = true;
@@ -628,6 +809,25 @@ public class JBrowserDriver extends RemoteWebDriver implements Killable {
     }
   }
 
+  /**
+   * Requests which held up the most recent page load: those which finished last, or which hadn't
+   * finished when the page was considered loaded, most recent first. Useful for choosing requests to
+   * exclude from page loading with {@link Settings.Builder#ajaxIgnoreUrls(String...)},
+   * {@link Settings.Builder#ajaxIgnoreHosts(String...)}, or {@link Settings.Builder#ajaxIgnoreContentTypes(String...)}.
+   * 
+   * @return Requests of the last page load, or an empty list if no page has loaded
+   */
+  public List<ResourceDelay> getPageLoadDelays() {
+    try {
+      synchronized (lock.validated()) {
+        return remote.getPageLoadDelays();
+      }
+    } catch (Throwable t) {
+      Util.handleException(t);
+      return null;
+    }
+  }
+
   /**
    * Waits until requests are completed and idle for a certain
    * amount of time. This type of waiting happens automatically on
@@ -680,6 +880,59 @@ public class JBrowserDriver extends RemoteWebDriver implements Killable {
     }
   }
 
+  /**
+   * Loads a page, waiting for it as long as the given strategy specifies rather than
+   * the strategy configured by {@link Settings.Builder#pageLoadStrategy(PageLoadStrategy)}.
+   * 
+   * @param url
+   * @param pageLoadStrategy
+   */
+  public void get(final String url, final PageLoadStrategy pageLoadStrategy) {
+    try {
+      synchronized (lock.validated()) {
+        remote.get(url, pageLoadStrategy);
+      }
+    } catch (Throwable t) {
+      Util.handleException(t);
+    }
+  }
+
+  /**
+   * Loads a page without blocking the calling thread.
+   * <p>
+   * Asynchronous commands are performed by the browser in the order they're called,
+   * but they aren't ordered with respect to blocking calls made at the same time on other threads.
+   * Futures are completed when the browser responds, on a thread from the common fork-join pool.
+   * 
+   * @param url
+   * @return Future completed once the page is loaded
+   */
+  public CompletableFuture<Void> getAsync(final String url) {
+    return async(new Converter<Void>() {
+      @Override
+      public Void convert(Object result) {
+        return null;
+      }
+    }, "get", new Class<?>[] { String.class }, url);
+  }
+
+  /**
+   * Loads a page without blocking the calling thread, waiting for it as long as the given strategy specifies.
+   * 
+   * @param url
+   * @param pageLoadStrategy
+   * @return Future completed once the page is loaded as far as the strategy requires
+   * @see #getAsync(String)
+   */
+  public CompletableFuture<Void> getAsync(final String url, final PageLoadStrategy pageLoadStrategy) {
+    return async(new Converter<Void>() {
+      @Override
+      public Void convert(Object result) {
+        return null;
+      }
+    }, "get", new Class<?>[] { String.class, PageLoadStrategy.class }, url, pageLoadStrategy);
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -696,6 +949,38 @@ public class JBrowserDriver extends RemoteWebDriver implements Killable {
     return by.findElements(this);
   }
 
+  /**
+   * Finds elements without blocking the calling thread.
+   * 
+   * @param by
+   * @return Future completed with the matching elements
+   * @see #getAsync(String)
+   */
+  public CompletableFuture<List<WebElement>> findElementsAsync(By by) {
+    return async(new Converter<List<WebElement>>() {
+      @SuppressWarnings("unchecked")
+      @Override
+      public List<WebElement> convert(Object result) {
+        return Element.constructList((List<ElementRemote>) result, JBrowserDriver.this, lock);
+      }
+    }, "findElements", new Class<?>[] { By.class }, by);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Batch.Results batch(Batch batch) {
+    try {
+      synchronized (lock.validated()) {
+        return new Batch.Results(batch, remote.batch(batch), this, lock);
+      }
+    } catch (Throwable t) {
+      Util.handleException(t);
+      return null;
+    }
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -986,6 +1271,31 @@ public class JBrowserDriver extends RemoteWebDriver implements Killable {
     }
   }
 
+  /**
+   * Executes a script without blocking the calling thread.
+   * 
+   * @param script
+   * @param args
+   * @return Future completed with the script's result
+   * @see #getAsync(String)
+   */
+  public CompletableFuture<Object> executeScriptAsync(String script, Object... args) {
+    Object[] params;
+    try {
+      params = Element.scriptParams(args);
+    } catch (Throwable t) {
+      CompletableFuture<Object> future = new CompletableFuture<Object>();
+      future.completeExceptionally(Util.wrapException(t));
+      return future;
+    }
+    return async(new Converter<Object>() {
+      @Override
+      public Object convert(Object result) {
+        return Element.constructObject(result, JBrowserDriver.this, lock);
+      }
+    }, "executeScript", new Class<?>[] { String.class, Object[].class }, script, params);
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -1129,10 +1439,44 @@ public class JBrowserDriver extends RemoteWebDriver implements Killable {
     }
   }
 
+  /**
+   * Notes that the element belongs to this driver's browser process.
+   */
+  void own(ElementRemote element) {
+    ElementHandle.own(element, processEnded);
+  }
+
   private void endProcess() {
+    if (shared != null) {
+      if (!sessionEnded.compareAndSet(false, true)) {
+        return;
+      }
+      if (!shared.release()) {
+        //other sessions still use the process, so only this session ends
+        lock.expired.set(true);
+        if (remote != null) {
+          try {
+            remote.kill();
+          } catch (Throwable t) {}
+        }
+        return;
+      }
+    }
     if (processEnded.compareAndSet(false, true)) {
-      lock.expired.set(true);
       final Process proc = process.get();
+      if (cacheStats.get() == null && remote != null && proc != null && proc.isAlive()) {
+        try {
+          cacheStats.set(remote.cacheStats());
+        } catch (Throwable t) {}
+      }
+      ElementHandle.forget(processEnded);
+      synchronized (processRemotes) {
+        processRemotes.remove(processEnded);
+        if (cacheStats.get() != null) {
+          endedCacheStats = endedCacheStats.add(cacheStats.get());
+        }
+      }
+      lock.expired.set(true);
       if (proc != null) {
         while (proc.isAlive()) {
           try {
@@ -1153,18 +1497,22 @@ public class JBrowserDriver extends RemoteWebDriver implements Killable {
           }
         }
       }
-      FileUtils.deleteQuietly(tmpDir);
-      synchronized (locks) {
-        locks.remove(lock);
-      }
-      synchronized (waiting) {
-        portGroupsActive.remove(configuredPortGroup.get());
-        waiting.notifyAll();
+      if (socketFactory.get() != null) {
+        socketFactory.get().close();
       }
+      ClassDataSharing.ended(tmpDir);
+      FileUtils.deleteQuietly(tmpDir);
+      PortAllocator.release(configuredPortGroup.get());
     }
   }
 
   private void saveData() {
+    //fetched on its own, so that the stats are kept even if saving the rest fails
+    try {
+      synchronized (lock.validated()) {
+        cacheStats.set(remote.cacheStats());
+      }
+    } catch (Throwable t) {}
     try {
       synchronized (lock.validated()) {
         OptionsRemote optionsRemote = remote.manage();
@@ -1253,6 +1601,52 @@ public class JBrowserDriver extends RemoteWebDriver implements Killable {
     }
   }
 
+  /**
+   * Takes a screenshot without blocking the calling thread.
+   * 
+   * @param outputType
+   * @return Future completed with the screenshot
+   * @see #getAsync(String)
+   */
+  public <X> CompletableFuture<X> getScreenshotAsync(final OutputType<X> outputType) {
+    return async(new Converter<X>() {
+      @Override
+      public X convert(Object result) {
+        return result == null ? null : outputType.convertFromPngBytes((byte[]) result);
+      }
+    }, "getScreenshot", new Class<?>[0]);
+  }
+
+  private static interface Converter<T> {
+    T convert(Object result);
+  }
+
+  private <T> CompletableFuture<T> async(final Converter<T> converter,
+      String methodName, Class<?>[] parameterTypes, Object... args) {
+    final CompletableFuture<T> future = new CompletableFuture<T>();
+    try {
+      lock.validated();
+      commands.async(JBrowserDriverRemote.class.getMethod(methodName, parameterTypes), args)
+          .whenComplete(new BiConsumer<Object, Throwable>() {
+            @Override
+            public void accept(Object result, Throwable failure) {
+              if (failure != null) {
+                future.completeExceptionally(Util.wrapException(failure));
+                return;
+              }
+              try {
+                future.complete(converter.convert(result));
+              } catch (Throwable t) {
+                future.completeExceptionally(Util.wrapException(t));
+              }
+            }
+          });
+    } catch (Throwable t) {
+      future.completeExceptionally(Util.wrapException(t));
+    }
+    return future;
+  }
+
   /**
    * @return Temporary directory where cached pages are saved.
    */
@@ -1267,6 +1661,28 @@ public class JBrowserDriver extends RemoteWebDriver implements Killable {
     }
   }
 
+  /**
+   * Statistics about the web cache of this browser's process, which are kept after {@link #quit()}.
+   * If the process hosts several sessions (see {@link Settings.Builder#processSessions(int)}),
+   * they're shared by all of them.
+   * 
+   * @return Statistics of the process since it started.
+   * @see #totalCacheStats()
+   */
+  public CacheStats cacheStats() {
+    if (lock.expired.get() && cacheStats.get() != null) {
+      return cacheStats.get();
+    }
+    try {
+      synchronized (lock.validated()) {
+        return remote.cacheStats();
+      }
+    } catch (Throwable t) {
+      Util.handleException(t);
+      return null;
+    }
+  }
+
   /**
    * @return Temporary directory where downloaded files are saved.
    */
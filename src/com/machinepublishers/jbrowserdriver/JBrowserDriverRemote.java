@@ -30,6 +30,10 @@ import org.openqa.selenium.WebDriverException;
 interface JBrowserDriverRemote extends Remote {
   void setUp(final Settings settings) throws RemoteException;
 
+  JBrowserDriverRemote newSession(Settings settings) throws RemoteException;
+
+  int handle() throws RemoteException;
+
   void storeCapabilities(Capabilities capabilities) throws RemoteException;
 
   void init() throws RemoteException;
@@ -42,6 +46,8 @@ interface JBrowserDriverRemote extends Remote {
 
   void pageWait() throws RemoteException;
 
+  List<ResourceDelay> getPageLoadDelays() throws RemoteException;
+
   void kill() throws RemoteException;
 
   byte[] getScreenshot() throws WebDriverException, RemoteException;
@@ -90,12 +96,16 @@ interface JBrowserDriverRemote extends Remote {
 
   void get(String url) throws RemoteException;
 
+  void get(String url, PageLoadStrategy pageLoadStrategy) throws RemoteException;
+
   String getCurrentUrl() throws RemoteException;
 
   String getTitle() throws RemoteException;
 
   List<ElementRemote> findElements(By by) throws RemoteException;
 
+  List<Object> batch(Batch batch) throws RemoteException;
+
   ElementRemote findElement(By by) throws RemoteException;
 
   String getPageSource() throws RemoteException;
@@ -121,4 +131,6 @@ interface JBrowserDriverRemote extends Remote {
   File attachmentsDir() throws RemoteException;
 
   File mediaDir() throws RemoteException;
+
+  CacheStats cacheStats() throws RemoteException;
 }
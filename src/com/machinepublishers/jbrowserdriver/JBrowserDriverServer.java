@@ -27,7 +27,7 @@ import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.RMISocketFactory;
-import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -64,6 +64,7 @@ class JBrowserDriverServer extends RemoteObject implements JBrowserDriverRemote,
     TakesScreenshot, Killable {
   private static final AtomicInteger childPort = new AtomicInteger();
   private static final AtomicReference<SocketFactory> socketFactory = new AtomicReference<SocketFactory>();
+  private static final AtomicReference<CommandServer> commandServer = new AtomicReference<CommandServer>();
   private static Registry registry;
 
   /*
@@ -71,7 +72,7 @@ class JBrowserDriverServer extends RemoteObject implements JBrowserDriverRemote,
    */
   public static void main(String[] args) {
     try {
-      CookieManager.setDefault(new CookieStore());
+      CookieManager.setDefault(new Session.CookieRouter());
       try {
         URL.setURLStreamHandlerFactory(new StreamHandler());
       } catch (Throwable t) {
@@ -96,15 +97,16 @@ class JBrowserDriverServer extends RemoteObject implements JBrowserDriverRemote,
       parentPort = parentPort < 0 ? 0 : parentPort;
       long parentAltPort = Long.parseLong(args[2]);
       parentAltPort = parentAltPort < 0 ? 0 : parentAltPort;
+      final File socketFile = args.length > 3 ? new File(args[3]) : null;
       Registry registryTmp = null;
       final int maxTries = 5;
       for (int i = 1; i <= maxTries; i++) {
         try {
-          if (childPort.get() <= 0) {
+          if (childPort.get() <= 0 && socketFile == null) {
             childPort.set(findPort(host));
           }
           socketFactory.set(new SocketFactory(host,
-              new PortGroup(childPort.get(), parentPort, parentAltPort), new HashSet<SocketLock>()));
+              new PortGroup(childPort.get(), parentPort, parentAltPort), socketFile));
 
           registryTmp = LocateRegistry.createRegistry(childPort.get(), socketFactory.get(), socketFactory.get());
           break;
@@ -116,7 +118,10 @@ class JBrowserDriverServer extends RemoteObject implements JBrowserDriverRemote,
       }
       registry = registryTmp;
       registry.rebind("HeartbeatRemote", new HeartbeatServer());
-      registry.rebind("JBrowserDriverRemote", new JBrowserDriverServer());
+      JBrowserDriverServer driver = new JBrowserDriverServer();
+      commandServer.set(new CommandServer(driver));
+      socketFactory.get().commandHandler(commandServer.get());
+      registry.rebind("JBrowserDriverRemote", driver);
 
       RMISocketFactory.setSocketFactory(socketFactory.get());
       System.out.println("ready on ports " + childPort.get() + "/" + parentPort + "/" + parentAltPort);
@@ -147,13 +152,39 @@ class JBrowserDriverServer extends RemoteObject implements JBrowserDriverRemote,
   }
 
   final AtomicReference<Context> context = new AtomicReference<Context>();
+  final Session session;
 
-  public JBrowserDriverServer() throws RemoteException {}
+  public JBrowserDriverServer() throws RemoteException {
+    this(Session.primary());
+  }
+
+  private JBrowserDriverServer(Session session) throws RemoteException {
+    this.session = session;
+  }
 
   @Override
   public void setUp(final Settings settings) {
-    SettingsManager.register(settings);
-    context.set(new Context());
+    session.register(settings);
+    context.set(new Context(session));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public JBrowserDriverServer newSession(final Settings settings) throws RemoteException {
+    JBrowserDriverServer driver = new JBrowserDriverServer(Session.create());
+    driver.setUp(settings);
+    commandServer.get().register(driver);
+    return driver;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int handle() {
+    return CommandProtocol.DRIVER - session.id;
   }
 
   @Override
@@ -186,10 +217,10 @@ class JBrowserDriverServer extends RemoteObject implements JBrowserDriverRemote,
           }
         });
     Accessor.getPageFor(context.get().item().engine.get()).stop();
-    ((CookieStore) CookieManager.getDefault()).clear();
-    StatusMonitor.instance().clear();
-    LogsServer.instance().clear(null);
-    SettingsManager.register(settings);
+    session.cookieStore.clear();
+    session.statusMonitor.clear();
+    session.logs.clear(null);
+    session.register(settings);
     context.get().reset(this);
   }
 
@@ -198,7 +229,7 @@ class JBrowserDriverServer extends RemoteObject implements JBrowserDriverRemote,
    * browser and creating a new instance.
    */
   public void reset() {
-    reset(SettingsManager.settings());
+    reset(session.settings());
   }
 
   /**
@@ -248,6 +279,15 @@ class JBrowserDriverServer extends RemoteObject implements JBrowserDriverRemote,
     return getStatusCode(context.get().timeouts.get().getPageLoadTimeoutMS());
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<ResourceDelay> getPageLoadDelays() {
+    init();
+    return new ArrayList<ResourceDelay>(context.get().item().httpListener.get().delays());
+  }
+
   private int getStatusCode(long waitMS) {
     init();
     int statusCode;
@@ -287,17 +327,31 @@ class JBrowserDriverServer extends RemoteObject implements JBrowserDriverRemote,
    */
   @Override
   public void get(final String url) {
+    get(url, null);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void get(final String url, final PageLoadStrategy pageLoadStrategy) {
     init();
+    final Settings settings = context.get().item().session.settings();
+    final PageLoadStrategy strategy = pageLoadStrategy != null ? pageLoadStrategy
+        : settings == null ? PageLoadStrategy.NORMAL : settings.pageLoadStrategy();
     long start = System.currentTimeMillis();
     try {
       AppThread.exec(context.get().item().statusCode,
           context.get().timeouts.get().getPageLoadTimeoutMS(), new Sync<Object>() {
             public Object perform() {
-              context.get().item().httpListener.get().resetStatusCode();
+              context.get().item().httpListener.get().resetStatusCode(strategy);
               context.get().item().engine.get().load(url);
               return null;
             }
           });
+      if (strategy == PageLoadStrategy.NONE) {
+        return;
+      }
       long end = System.currentTimeMillis();
       if (context.get().timeouts.get().getPageLoadTimeoutMS() == 0) {
         getStatusCode();
@@ -308,7 +362,7 @@ class JBrowserDriverServer extends RemoteObject implements JBrowserDriverRemote,
         }
       }
     } finally {
-      if (context.get().item().statusCode.get() == 0) {
+      if (strategy != PageLoadStrategy.NONE && context.get().item().statusCode.get() == 0) {
         AppThread.exec(
             new Sync<Object>() {
               @Override
@@ -342,6 +396,15 @@ class JBrowserDriverServer extends RemoteObject implements JBrowserDriverRemote,
     return ElementServer.create(context.get().item()).findElements(by);
   }
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<Object> batch(Batch batch) {
+    init();
+    return ElementServer.create(context.get().item()).batch(batch);
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -572,7 +635,7 @@ class JBrowserDriverServer extends RemoteObject implements JBrowserDriverRemote,
    */
   @Override
   public LogsServer logs() {
-    return LogsServer.instance();
+    return session.logs;
   }
 
   /**
@@ -605,7 +668,13 @@ class JBrowserDriverServer extends RemoteObject implements JBrowserDriverRemote,
    * {@inheritDoc}
    */
   @Override
-  public void kill() {}
+  public void kill() {
+    //the parent ends the whole process unless other sessions share it
+    if (context.get() != null) {
+      context.get().removeItems();
+    }
+    session.close();
+  }
 
   /**
    * {@inheritDoc}
@@ -629,7 +698,7 @@ class JBrowserDriverServer extends RemoteObject implements JBrowserDriverRemote,
    */
   @Override
   public File cacheDir() {
-    return StreamConnection.cacheDir();
+    return session.client().cacheDir();
   }
 
   /**
@@ -637,7 +706,7 @@ class JBrowserDriverServer extends RemoteObject implements JBrowserDriverRemote,
    */
   @Override
   public File attachmentsDir() {
-    return StreamConnection.attachmentsDir();
+    return session.attachmentsDir;
   }
 
   /**
@@ -645,6 +714,14 @@ class JBrowserDriverServer extends RemoteObject implements JBrowserDriverRemote,
    */
   @Override
   public File mediaDir() {
-    return StreamConnection.mediaDir();
+    return session.mediaDir;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public CacheStats cacheStats() {
+    return CacheMonitor.stats();
   }
 }
\ No newline at end of file
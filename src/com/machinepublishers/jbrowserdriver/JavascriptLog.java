@@ -25,7 +25,6 @@ import netscape.javascript.JSObject;
 class JavascriptLog {
 
   private static final String bridgeName = Util.randomPropertyName();
-  private static final Bridge bridge = new Bridge();
   private static final String consoleScript;
   static {
     consoleScript = new StringBuilder()
@@ -44,7 +43,8 @@ class JavascriptLog {
         .append("return false;});").toString();
   }
 
-  static void attach(WebPage page, long frameId) {
+  static void attach(WebPage page, long frameId, LogsServer logs) {
+    final Bridge bridge = new Bridge(logs);
     AppThread.exec(
         new Sync<Object>() {
           @Override
@@ -82,10 +82,14 @@ class JavascriptLog {
   }
 
   public static class Bridge {
-    private Bridge() {}
+    private final LogsServer logs;
+
+    private Bridge(LogsServer logs) {
+      this.logs = logs;
+    }
 
     public void log(String message) {
-      LogsServer.instance().javascript(message);
+      logs.javascript(message);
     }
   }
 }
\ No newline at end of file
@@ -23,6 +23,7 @@ class Job {
 
   final Settings settings;
   final AtomicReference<PortGroup> portGroup;
+  final long created = System.nanoTime();
 
   Job(Settings settings, AtomicReference<PortGroup> portGroup) {
     this.settings = settings;
@@ -59,19 +59,12 @@ class LogsServer extends RemoteObject implements LogsRemote, org.openqa.selenium
   private final LinkedList<Entry> javascript = new LinkedList<Entry>();
   private final LinkedList<Entry> trace = new LinkedList<Entry>();
   private final LinkedList<Entry> warn = new LinkedList<Entry>();
-  private static final LogsServer instance;
-  static {
-    LogsServer instanceTmp = null;
-    try {
-      instanceTmp = new LogsServer();
-    } catch (RemoteException e) {
-      Util.handleException(e);
-    }
-    instance = instanceTmp;
-  }
+  private final Session session;
 
-  static void updateSettings() {
-    Settings settings = SettingsManager.settings();
+  /**
+   * Wire logging is configured for the whole process, so the most recently registered settings apply.
+   */
+  static void updateSettings(Settings settings) {
     if (settings != null && settings.logWire()) {
       System.setProperty("org.apache.commons.logging.Log", "com.machinepublishers.jbrowserdriver.WireLog");
       System.setProperty("org.apache.commons.logging.simplelog.log.org.apache.http.wire", "DEBUG");
@@ -82,11 +75,16 @@ class LogsServer extends RemoteObject implements LogsRemote, org.openqa.selenium
     }
   }
 
+  /**
+   * @return Logs of the session whose work the calling thread is doing
+   */
   static LogsServer instance() {
-    return instance;
+    return Session.current().logs;
   }
 
-  private LogsServer() throws RemoteException {}
+  LogsServer(Session session) throws RemoteException {
+    this.session = session;
+  }
 
   public void clear(String type) {
     handleEntries(false, type);
@@ -148,28 +146,28 @@ class LogsServer extends RemoteObject implements LogsRemote, org.openqa.selenium
   }
 
   public void wire(String message) {
-    Settings settings = SettingsManager.settings();
+    Settings settings = session.settings();
     if (settings != null && settings.logWire()) {
       handleMessage(message, wire, Level.FINEST, "wire", settings);
     }
   }
 
   public void javascript(String message) {
-    Settings settings = SettingsManager.settings();
+    Settings settings = session.settings();
     if (settings != null && settings.logJavascript()) {
       handleMessage(message, javascript, Level.FINER, "javascript", settings);
     }
   }
 
   public void trace(String message) {
-    Settings settings = SettingsManager.settings();
+    Settings settings = session.settings();
     if (settings != null && settings.logTrace()) {
       handleMessage(message, trace, Level.INFO, "trace", settings);
     }
   }
 
   public void warn(String message) {
-    Settings settings = SettingsManager.settings();
+    Settings settings = session.settings();
     if (settings == null || settings.logWarnings()) {
       handleMessage(message, warn, Level.WARNING, "warnings", settings);
     }
@@ -0,0 +1,350 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2016 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.apache.http.Header;
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.HttpCacheStorage;
+import org.apache.http.client.cache.HttpCacheUpdateCallback;
+import org.apache.http.client.cache.HttpCacheUpdateException;
+import org.apache.http.client.cache.Resource;
+
+/**
+ * Keeps recently used cache entries in memory in front of another cache, bounded by their size in bytes.
+ * <p>
+ * Entries are evicted as a segmented LRU: new entries go to a probationary segment, and are promoted to a
+ * protected segment when they're looked up again, so resources used once don't push out those used repeatedly.
+ * Keys which the other cache doesn't have are remembered too, so repeated misses don't reach it.
+ * <p>
+ * When the other cache is a {@link SegmentCache}, which other processes may share, each lookup checks the
+ * version of the entry it holds, so entries stored or removed by those processes replace what's kept here.
+ * <p>
+ * Other {@link CachePolicy} objects rank entries instead, evicting the entry ranked lowest.
+ * The policy also decides which entries are admitted at all.
+ * <p>
+ * Browsers in a process using the same cache directory share one of these, so its size is a budget
+ * for the whole process, and it outlives the reset of any one browser.
+ */
+class MemoryCache implements HttpCacheStorage {
+  private static final long ENTRY_OVERHEAD = 512;
+  private static final int MAX_MISSING = 10 * 1000;
+  private static final double PROTECTED_RATIO = .8;
+  private static final Map<File, MemoryCache> caches = new HashMap<File, MemoryCache>();
+  private final File dir;
+  private volatile HttpCacheStorage storage;
+  private final CachePolicy policy;
+  private final long maxBytes;
+  private final long maxProtectedBytes;
+  private final LinkedHashMap<String, Node> probation = new LinkedHashMap<String, Node>();
+  private final LinkedHashMap<String, Node> protectedNodes = new LinkedHashMap<String, Node>();
+  private final Map<String, Boolean> missing = new LinkedHashMap<String, Boolean>(16, .75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+      return size() > MAX_MISSING;
+    }
+  };
+  private final Map<String, Node> rankedNodes = new HashMap<String, Node>();
+  private final TreeSet<Node> ranks = new TreeSet<Node>((a, b) -> a.rank != b.rank
+      ? Double.compare(a.rank, b.rank) : Long.compare(a.order, b.order));
+  private long probationBytes;
+  private long protectedBytes;
+  private long rankedBytes;
+  private long writes;
+  private long orders;
+  private double clock;
+  private int references;
+
+  private static class Node {
+    private final String key;
+    private final HttpCacheEntry entry;
+    private final Object version;
+    private final long weight;
+    private long uses;
+    private double rank;
+    private long order;
+
+    Node(String key, HttpCacheEntry entry, Object version) {
+      this.key = key;
+      this.entry = entry;
+      this.version = version;
+      this.weight = weight(entry);
+    }
+  }
+
+  private MemoryCache(File dir, HttpCacheStorage storage, long maxBytes, CachePolicy policy) {
+    this.dir = dir;
+    this.storage = storage;
+    this.policy = policy;
+    this.maxBytes = maxBytes;
+    this.maxProtectedBytes = (long) (maxBytes * PROTECTED_RATIO);
+  }
+
+  /**
+   * Gets the memory cache of the directory, which is sized by the first browser in this process to use it.
+   * Must be balanced by a call to {@link #close()}.
+   *
+   * @param dir
+   *          Directory of the cache on disk
+   * @param storage
+   *          Cache holding all entries, which replaces the one used by earlier browsers
+   * @param maxBytes
+   *          Maximum size of the entries kept in memory
+   * @param policy
+   *          Decides which entries are kept in memory
+   */
+  static MemoryCache open(File dir, HttpCacheStorage storage, long maxBytes, CachePolicy policy) throws IOException {
+    dir = dir.getCanonicalFile();
+    synchronized (caches) {
+      MemoryCache cache = caches.get(dir);
+      if (cache == null) {
+        cache = new MemoryCache(dir, storage, maxBytes, policy);
+        caches.put(dir, cache);
+      } else {
+        cache.storage = storage;
+      }
+      ++cache.references;
+      return cache;
+    }
+  }
+
+  /**
+   * Releases this use of the cache, and discards its entries once no browser in this process uses it.
+   */
+  void close() {
+    synchronized (caches) {
+      if (--references == 0) {
+        caches.remove(dir);
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void updateEntry(String key, HttpCacheUpdateCallback callback) throws IOException, HttpCacheUpdateException {
+    HttpCacheEntry entry = callback.update(getEntry(key));
+    putEntry(key, entry);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void removeEntry(String key) throws IOException {
+    storage.removeEntry(key);
+    synchronized (this) {
+      remove(key);
+      missing.put(key, Boolean.TRUE);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void putEntry(String key, HttpCacheEntry entry) throws IOException {
+    storage.putEntry(key, entry);
+    Object version = version(key);
+    synchronized (this) {
+      ++writes;
+      missing.remove(key);
+      //a ranked entry keeps its uses when it's updated
+      Node previous = rankedNodes.get(key);
+      remove(key);
+      add(key, entry, version, previous == null ? 0 : previous.uses);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public HttpCacheEntry getEntry(String key) throws IOException {
+    final Object version = version(key);
+    final long writesBefore;
+    synchronized (this) {
+      writesBefore = writes;
+      if (version != null) {
+        missing.remove(key);
+      }
+      Node node = node(key);
+      if (node != null && node.version != version) {
+        //stored again or removed by another process
+        remove(key);
+      }
+      node = rankedNodes.get(key);
+      if (node != null) {
+        ranks.remove(node);
+        ++node.uses;
+        rank(node);
+        return node.entry;
+      }
+      node = protectedNodes.remove(key);
+      if (node != null) {
+        protectedNodes.put(key, node);
+        return node.entry;
+      }
+      node = probation.remove(key);
+      if (node != null) {
+        probationBytes -= node.weight;
+        promote(key, node);
+        return node.entry;
+      }
+      if (missing.containsKey(key)) {
+        return null;
+      }
+    }
+    HttpCacheEntry entry = storage.getEntry(key);
+    synchronized (this) {
+      if (entry == null) {
+        //an entry stored meanwhile may not have been seen
+        if (writes == writesBefore) {
+          missing.put(key, Boolean.TRUE);
+        }
+      } else if (!probation.containsKey(key) && !protectedNodes.containsKey(key) && !rankedNodes.containsKey(key)) {
+        add(key, entry, version, 0);
+      }
+    }
+    return entry;
+  }
+
+  /**
+   * @return Version of the entry in the other cache, if it keeps versions, else <code>null</code>
+   */
+  private Object version(String key) throws IOException {
+    HttpCacheStorage storage = this.storage;
+    return storage instanceof SegmentCache ? ((SegmentCache) storage).version(key) : null;
+  }
+
+  private Node node(String key) {
+    Node node = rankedNodes.get(key);
+    if (node == null) {
+      node = protectedNodes.get(key);
+    }
+    return node == null ? probation.get(key) : node;
+  }
+
+  private void add(String key, HttpCacheEntry entry, Object version, long uses) {
+    if (!policy.admit(entry)) {
+      CacheMonitor.rejected();
+      return;
+    }
+    Node node = new Node(key, entry, version);
+    if (!policy.segmented()) {
+      if (node.weight <= maxBytes) {
+        node.uses = uses + 1;
+        rank(node);
+        rankedNodes.put(key, node);
+        rankedBytes += node.weight;
+        evict();
+      }
+      return;
+    }
+    if (node.weight > maxBytes - maxProtectedBytes) {
+      //would evict the whole probationary segment
+      return;
+    }
+    probation.put(key, node);
+    probationBytes += node.weight;
+    evict();
+  }
+
+  private void promote(String key, Node node) {
+    protectedNodes.put(key, node);
+    protectedBytes += node.weight;
+    for (Iterator<Map.Entry<String, Node>> it = protectedNodes.entrySet().iterator(); protectedBytes > maxProtectedBytes
+        && it.hasNext();) {
+      Map.Entry<String, Node> eldest = it.next();
+      if (eldest.getValue() == node) {
+        break;
+      }
+      it.remove();
+      protectedBytes -= eldest.getValue().weight;
+      probation.put(eldest.getKey(), eldest.getValue());
+      probationBytes += eldest.getValue().weight;
+    }
+    evict();
+  }
+
+  /**
+   * Ranks a node which isn't in the ranking by its value, aged by the rank of the last node evicted.
+   */
+  private void rank(Node node) {
+    node.rank = clock + policy.value(node.entry, node.uses, node.weight);
+    node.order = ++orders;
+    ranks.add(node);
+  }
+
+  private void evict() {
+    while (rankedBytes > maxBytes && !ranks.isEmpty()) {
+      Node node = ranks.pollFirst();
+      rankedNodes.remove(node.key);
+      rankedBytes -= node.weight;
+      clock = node.rank;
+      CacheMonitor.evicted();
+    }
+    for (Iterator<Node> it = probation.values().iterator(); probationBytes + protectedBytes > maxBytes && it.hasNext();) {
+      probationBytes -= it.next().weight;
+      it.remove();
+      CacheMonitor.evicted();
+    }
+    for (Iterator<Node> it = protectedNodes.values().iterator(); probationBytes + protectedBytes > maxBytes
+        && it.hasNext();) {
+      protectedBytes -= it.next().weight;
+      it.remove();
+      CacheMonitor.evicted();
+    }
+  }
+
+  private void remove(String key) {
+    Node node = rankedNodes.remove(key);
+    if (node != null) {
+      ranks.remove(node);
+      rankedBytes -= node.weight;
+    }
+    node = probation.remove(key);
+    if (node != null) {
+      probationBytes -= node.weight;
+    }
+    node = protectedNodes.remove(key);
+    if (node != null) {
+      protectedBytes -= node.weight;
+    }
+  }
+
+  private static long weight(HttpCacheEntry entry) {
+    long weight = ENTRY_OVERHEAD;
+    Resource resource = entry.getResource();
+    if (resource != null) {
+      weight += resource.length();
+    }
+    for (Header header : entry.getAllHeaders()) {
+      weight += 2 * (header.getName().length() + header.getValue().length());
+    }
+    return weight;
+  }
+}
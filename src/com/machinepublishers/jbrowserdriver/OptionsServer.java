@@ -32,12 +32,10 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.http.impl.cookie.BasicClientCookie;
 import org.openqa.selenium.Cookie;
 
-import com.sun.webkit.network.CookieManager;
-
 class OptionsServer extends RemoteObject implements OptionsRemote,
     org.openqa.selenium.WebDriver.Options {
-  private static final CookieStore cookieStore = (CookieStore) CookieManager.getDefault();
   private final Context context;
+  private final CookieStore cookieStore;
   private final ImeHandlerServer imeHandler = new com.machinepublishers.jbrowserdriver.ImeHandlerServer();
   private final AtomicReference<com.machinepublishers.jbrowserdriver.TimeoutsServer> timeouts;
   private static final Pattern domain = Pattern.compile(".*?://(?:[^/]*@)?\\[?([^\\]:/]*).*");
@@ -46,6 +44,7 @@ class OptionsServer extends RemoteObject implements OptionsRemote,
       final AtomicReference<com.machinepublishers.jbrowserdriver.TimeoutsServer> timeouts)
       throws RemoteException {
     this.context = context;
+    this.cookieStore = context.session.cookieStore;
     this.timeouts = timeouts;
   }
 
@@ -177,7 +176,7 @@ class OptionsServer extends RemoteObject implements OptionsRemote,
    */
   @Override
   public LogsServer logs() {
-    return com.machinepublishers.jbrowserdriver.LogsServer.instance();
+    return context.session.logs;
   }
 
   /**
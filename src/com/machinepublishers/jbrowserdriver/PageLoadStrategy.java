@@ -0,0 +1,56 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2016 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+/**
+ * How long navigation and other page-loading actions wait before returning,
+ * following the WebDriver <code>pageLoadStrategy</code> capability.
+ * 
+ * @see Settings.Builder#pageLoadStrategy(PageLoadStrategy)
+ * @see JBrowserDriver#get(String, PageLoadStrategy)
+ */
+public enum PageLoadStrategy {
+  /**
+   * Wait until the page and its AJAX requests have finished loading and are idle
+   */
+  NORMAL,
+
+  /**
+   * Wait until the main document has been parsed (<code>DOMContentLoaded</code>),
+   * while its subresources keep loading
+   */
+  EAGER,
+
+  /**
+   * Return once loading has started. Other actions still wait until the main document is available.
+   */
+  NONE;
+
+  /**
+   * @return The name used by the WebDriver capability, i.e., <code>normal</code>, <code>eager</code>,
+   *         or <code>none</code>
+   */
+  @Override
+  public String toString() {
+    return name().toLowerCase();
+  }
+
+  static PageLoadStrategy parse(String value) {
+    return value == null ? null : valueOf(value.trim().toUpperCase());
+  }
+}
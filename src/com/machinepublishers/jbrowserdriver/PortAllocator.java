@@ -0,0 +1,167 @@
+/*
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2016 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assigns port groups to browser processes, limiting how many run at once.
+ * <p>
+ * The free groups of each list of port groups (see {@link Settings#portGroups()}) are indexed in a bitset,
+ * so allocating takes the lowest free group without scanning the groups in use. Browsers waiting for a group
+ * are served in the order they arrived. Lists of different Settings objects may share ports, so a free group
+ * is skipped while any of its ports is used by another list's group.
+ */
+class PortAllocator {
+  private static final Object lock = new Object();
+  private static final Map<List<PortGroup>, Pool> pools = new IdentityHashMap<List<PortGroup>, Pool>();
+  private static final Set<Pool> starving = new LinkedHashSet<Pool>();
+  private static final Map<PortGroup, Pool> owners = new HashMap<PortGroup, Pool>();
+  private static final Set<Long> activePorts = new HashSet<Long>();
+  private static int waiting;
+  private static long granted;
+  private static long queued;
+  private static long totalWaitNanos;
+  private static long maxWaitNanos;
+
+  private static class Pool {
+    private final List<PortGroup> groups;
+    private final Map<PortGroup, Integer> indexes = new HashMap<PortGroup, Integer>();
+    private final BitSet free = new BitSet();
+    private final ArrayDeque<Job> queue = new ArrayDeque<Job>();
+
+    Pool(List<PortGroup> groups) {
+      this.groups = groups;
+      for (int i = 0; i < groups.size(); i++) {
+        indexes.put(groups.get(i), i);
+      }
+      free.set(0, groups.size());
+    }
+  }
+
+  /**
+   * Blocks until a port group from the job's settings is free, and assigns it to the job.
+   */
+  static void acquire(Job job) {
+    synchronized (lock) {
+      Pool pool = pools.get(job.settings.portGroups());
+      if (pool == null) {
+        pool = new Pool(job.settings.portGroups());
+        pools.put(job.settings.portGroups(), pool);
+      }
+      if (pool.queue.isEmpty() && grant(pool, job)) {
+        return;
+      }
+      pool.queue.add(job);
+      starving.add(pool);
+      ++waiting;
+    }
+    synchronized (job) {
+      while (job.portGroup.get() == null) {
+        try {
+          job.wait();
+        } catch (InterruptedException e) {}
+      }
+    }
+  }
+
+  /**
+   * Frees a port group and assigns it, or any group it no longer blocks, to the browsers waiting longest.
+   */
+  static void release(PortGroup portGroup) {
+    if (portGroup == null) {
+      return;
+    }
+    synchronized (lock) {
+      Pool owner = owners.remove(portGroup);
+      if (owner == null) {
+        return;
+      }
+      activePorts.remove(portGroup.child);
+      activePorts.remove(portGroup.parent);
+      activePorts.remove(portGroup.parentAlt);
+      owner.free.set(owner.indexes.get(portGroup));
+      serve(owner);
+      for (Iterator<Pool> it = starving.iterator(); it.hasNext();) {
+        Pool pool = it.next();
+        if (pool != owner) {
+          serve(pool);
+        }
+        if (pool.queue.isEmpty()) {
+          it.remove();
+        }
+      }
+      if (owner.queue.isEmpty() && owner.free.cardinality() == owner.groups.size()) {
+        //settings objects can be short-lived, so idle pools aren't kept
+        pools.remove(owner.groups);
+      }
+    }
+  }
+
+  private static void serve(Pool pool) {
+    while (!pool.queue.isEmpty() && grant(pool, pool.queue.peek())) {
+      pool.queue.poll();
+      --waiting;
+    }
+  }
+
+  private static boolean grant(Pool pool, Job job) {
+    for (int i = pool.free.nextSetBit(0); i > -1; i = pool.free.nextSetBit(i + 1)) {
+      PortGroup portGroup = pool.groups.get(i);
+      if (!activePorts.contains(portGroup.child)
+          && !activePorts.contains(portGroup.parent)
+          && !activePorts.contains(portGroup.parentAlt)) {
+        pool.free.clear(i);
+        owners.put(portGroup, pool);
+        activePorts.add(portGroup.child);
+        activePorts.add(portGroup.parent);
+        activePorts.add(portGroup.parentAlt);
+        final long waitNanos = System.nanoTime() - job.created;
+        ++granted;
+        if (pool.queue.contains(job)) {
+          ++queued;
+          totalWaitNanos += waitNanos;
+          maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+        }
+        synchronized (job) {
+          job.portGroup.set(portGroup);
+          job.notifyAll();
+        }
+        return true;
+      }
+    }
+    return false;
+  }
+
+  static ProcessQueueStats stats() {
+    synchronized (lock) {
+      return new ProcessQueueStats(waiting, granted, queued,
+          TimeUnit.NANOSECONDS.toMillis(totalWaitNanos), TimeUnit.NANOSECONDS.toMillis(maxWaitNanos));
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2016 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * Spare browser processes, already launched (and optionally initialized), kept per {@link Settings} object.
+ * <p>
+ * The pool holds at least {@link Settings#poolMin()} spares. While browsers are waiting to lease one,
+ * it launches one more per waiting browser, up to {@link Settings#poolMax()}.
+ */
+class ProcessPool {
+  private static final Map<Settings, ProcessPool> pools = new IdentityHashMap<Settings, ProcessPool>();
+  private final Settings settings;
+  private final LinkedList<JBrowserDriver> spares = new LinkedList<JBrowserDriver>();
+  private int launching;
+  private int waiting;
+  private long failures;
+
+  private ProcessPool(Settings settings) {
+    this.settings = settings;
+  }
+
+  /**
+   * @return A spare browser, or <code>null</code> if pooling is disabled or none could be launched
+   */
+  static JBrowserDriver lease(Settings settings) {
+    if (settings.poolMax() <= 0) {
+      return null;
+    }
+    ProcessPool pool;
+    synchronized (pools) {
+      pool = pools.get(settings);
+      if (pool == null) {
+        pool = new ProcessPool(settings);
+        pools.put(settings, pool);
+      }
+    }
+    return pool.lease();
+  }
+
+  private synchronized JBrowserDriver lease() {
+    final long failuresBefore = failures;
+    ++waiting;
+    try {
+      while (true) {
+        refill();
+        while (!spares.isEmpty()) {
+          JBrowserDriver spare = spares.removeFirst();
+          if (spare.isAlive()) {
+            return spare;
+          }
+          spare.kill();
+          ++failures;
+        }
+        if (launching == 0 || failures != failuresBefore) {
+          //launching again could fail the same way, so the caller launches its own process and reports any problem
+          return null;
+        }
+        try {
+          wait();
+        } catch (InterruptedException e) {}
+      }
+    } finally {
+      --waiting;
+      refill();
+    }
+  }
+
+  private synchronized void refill() {
+    final int target = Math.min(settings.poolMax(), settings.poolMin() + waiting);
+    while (spares.size() + launching < target) {
+      ++launching;
+      Thread thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          JBrowserDriver spare = null;
+          try {
+            spare = new JBrowserDriver(settings, null, null);
+            if (settings.poolInit()) {
+              spare.init();
+            }
+          } catch (Throwable t) {
+            //the browser leasing from the pool will launch its own process and report any problem
+          }
+          synchronized (ProcessPool.this) {
+            --launching;
+            if (spare != null) {
+              spares.add(spare);
+            } else {
+              ++failures;
+            }
+            ProcessPool.this.notifyAll();
+          }
+        }
+      });
+      thread.setDaemon(true);
+      thread.setName("JBrowserDriver process pool");
+      thread.start();
+    }
+  }
+}
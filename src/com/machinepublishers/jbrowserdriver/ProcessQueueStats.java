@@ -0,0 +1,91 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2016 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+/**
+ * Statistics about browsers waiting for a port group before their processes can launch.
+ * 
+ * @see JBrowserDriver#processQueueStats()
+ */
+public class ProcessQueueStats {
+  private final int waiting;
+  private final long granted;
+  private final long queued;
+  private final long totalWaitMillis;
+  private final long maxWaitMillis;
+
+  ProcessQueueStats(int waiting, long granted, long queued, long totalWaitMillis, long maxWaitMillis) {
+    this.waiting = waiting;
+    this.granted = granted;
+    this.queued = queued;
+    this.totalWaitMillis = totalWaitMillis;
+    this.maxWaitMillis = maxWaitMillis;
+  }
+
+  /**
+   * @return Number of browsers currently waiting for a port group.
+   */
+  public int waiting() {
+    return waiting;
+  }
+
+  /**
+   * @return Number of port groups assigned, whether or not the browser had to wait.
+   */
+  public long granted() {
+    return granted;
+  }
+
+  /**
+   * @return Number of port groups assigned to browsers which had to wait.
+   */
+  public long queued() {
+    return queued;
+  }
+
+  /**
+   * @return Total time in milliseconds that browsers waited for a port group.
+   */
+  public long totalWaitMillis() {
+    return totalWaitMillis;
+  }
+
+  /**
+   * @return Longest time in milliseconds that a browser waited for a port group.
+   */
+  public long maxWaitMillis() {
+    return maxWaitMillis;
+  }
+
+  /**
+   * @return Average time in milliseconds that browsers which had to wait waited for a port group.
+   */
+  public long averageWaitMillis() {
+    return queued == 0 ? 0 : totalWaitMillis / queued;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return new StringBuilder().append("waiting=").append(waiting).append(", granted=").append(granted)
+        .append(", queued=").append(queued).append(", averageWaitMillis=").append(averageWaitMillis())
+        .append(", maxWaitMillis=").append(maxWaitMillis).toString();
+  }
+}
@@ -0,0 +1,76 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2016 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.Serializable;
+
+/**
+ * A request which was pending while a page loaded, as reported by {@link JBrowserDriver#getPageLoadDelays()}.
+ */
+public class ResourceDelay implements Serializable {
+  private static final long serialVersionUID = 1L;
+  private final String url;
+  private final long startMS;
+  private final long pendingMS;
+  private final boolean finished;
+
+  ResourceDelay(String url, long startMS, long pendingMS, boolean finished) {
+    this.url = url;
+    this.startMS = startMS;
+    this.pendingMS = pendingMS;
+    this.finished = finished;
+  }
+
+  /**
+   * @return URL of the request
+   */
+  public String url() {
+    return url;
+  }
+
+  /**
+   * @return Time in milliseconds from the start of the page load until the request started
+   */
+  public long startMS() {
+    return startMS;
+  }
+
+  /**
+   * @return Time in milliseconds that the request was pending
+   */
+  public long pendingMS() {
+    return pendingMS;
+  }
+
+  /**
+   * @return Whether the request finished or failed, rather than being given up on after
+   *         {@link Settings.Builder#ajaxResourceTimeout(long)} or the page load timeout
+   */
+  public boolean finished() {
+    return finished;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String toString() {
+    return new StringBuilder().append(url).append(" (started at ").append(startMS).append("ms, pending ")
+        .append(pendingMS).append("ms").append(finished ? "" : ", unfinished").append(")").toString();
+  }
+}
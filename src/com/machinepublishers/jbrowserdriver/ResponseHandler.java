@@ -41,6 +41,7 @@ class ResponseHandler {
       new HashSet<Integer>(Arrays.asList(new Integer[] { 301, 302, 303, 307, 308 })));
 
   static InputStream handleResponse(StreamConnection conn, InputStream inputStream) throws IOException {
+    final Session session = conn.session();
     String url = conn.getURL().toExternalForm();
     byte[] bytes = new byte[0];
     try {
@@ -54,17 +55,17 @@ class ResponseHandler {
       conn.removeContentEncoding();
       conn.setContentLength(bytes.length);
 
-      Settings settings = SettingsManager.settings();
+      Settings settings = session.settings();
       if (settings != null) {
         String disposition = conn.getHeaderField("Content-Disposition");
 
         if (settings.saveAttachments() && disposition != null
-            && StatusMonitor.instance().isPrimaryDocument(true, url)) {
-          writeContentToDisk(bytes, StreamConnection.attachmentsDir(), url, conn.getContentTypeRaw(), disposition);
+            && session.statusMonitor.isPrimaryDocument(true, url)) {
+          writeContentToDisk(bytes, session.attachmentsDir, url, conn.getContentTypeRaw(), disposition);
         }
 
         if (settings.saveMedia() && ((StreamConnection) conn).isMedia()) {
-          writeContentToDisk(bytes, StreamConnection.mediaDir(), url, conn.getContentTypeRaw(), disposition);
+          writeContentToDisk(bytes, session.mediaDir, url, conn.getContentTypeRaw(), disposition);
         }
       }
       byte[] newContent = getBody(conn, bytes, url);
@@ -72,7 +73,7 @@ class ResponseHandler {
         bytes = newContent;
       }
     } catch (Throwable t) {
-      LogsServer.instance().exception(t);
+      session.logs.exception(t);
     } finally {
       Util.close(inputStream);
     }
@@ -104,15 +105,16 @@ class ResponseHandler {
   }
 
   private static byte[] getBody(StreamConnection connection, byte[] inflatedContent, String url) {
-    final Settings settings = SettingsManager.settings();
+    final Session session = connection.session();
+    final Settings settings = session.settings();
     try {
       if (settings.quickRender() && ((StreamConnection) connection).isMedia()) {
-        LogsServer.instance().trace("Media discarded: " + url);
-        StatusMonitor.instance().addDiscarded(url);
+        session.logs.trace("Media discarded: " + url);
+        session.statusMonitor.addDiscarded(url);
         return new byte[0];
       } else if (!redirectCodes.contains(connection.getResponseCode())
           && (connection.getContentType() == null || connection.getContentType().indexOf("text/html") > -1)
-          && StatusMonitor.instance().isPrimaryDocument(false, url)) {
+          && session.statusMonitor.isPrimaryDocument(false, url)) {
         String intercepted = null;
         String charset = Util.charset(connection);
         String content = new String(inflatedContent, charset);
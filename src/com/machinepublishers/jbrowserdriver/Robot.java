@@ -33,6 +33,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.imageio.ImageIO;
 
@@ -239,6 +240,7 @@ class Robot {
   private static final int LINE_FEED = "\n".codePointAt(0);
   private static final int CARRIAGE_RETURN = "\r".codePointAt(0);
   private static final int ENTER = Keys.ENTER.toString().codePointAt(0);
+  private static final ReentrantLock screen = new ReentrantLock(true);
   private final AtomicReference<com.sun.glass.ui.Robot> robot = new AtomicReference<com.sun.glass.ui.Robot>();
   private final AtomicLong latestThread = new AtomicLong();
   private final AtomicLong curThread = new AtomicLong();
@@ -286,21 +288,35 @@ class Robot {
         } catch (InterruptedException e) {}
       }
     }
-    AppThread.exec(context.item().statusCode, new Sync<Object>() {
-      @Override
-      public Object perform() {
-        return null;
-      }
-    });
+    //input and screen captures go to whichever window is in front, which is shared by all sessions of the process
+    screen.lock();
+    try {
+      AppThread.exec(context.item().statusCode, new Sync<Object>() {
+        @Override
+        public Object perform() {
+          if (Session.count() > 1) {
+            context.item().stage.get().toFront();
+          }
+          return null;
+        }
+      });
+    } catch (RuntimeException e) {
+      screen.unlock();
+      throw e;
+    }
   }
 
   private void unlock() {
-    AppThread.exec(context.item().statusCode, new Sync<Object>() {
-      @Override
-      public Object perform() {
-        return null;
-      }
-    });
+    try {
+      AppThread.exec(context.item().statusCode, new Sync<Object>() {
+        @Override
+        public Object perform() {
+          return null;
+        }
+      });
+    } finally {
+      screen.unlock();
+    }
     curThread.incrementAndGet();
     synchronized (curThread) {
       curThread.notifyAll();
@@ -588,8 +604,14 @@ class Robot {
         public byte[] perform() {
           BufferedImage image = null;
 
+          final Settings settings = context.item().session.settings();
+          final boolean renderOnDemand = settings != null && settings.renderOnDemand();
           Throwable attempt1 = null;
+          final double opacity = context.item().view.get().getOpacity();
           try {
+            if (renderOnDemand) {
+              context.item().view.get().setOpacity(1);
+            }
             image = SwingFXUtils.fromFXImage(
                 context.item().view.get().snapshot(
                     new SnapshotParameters(),
@@ -599,10 +621,15 @@ class Robot {
                 null);
           } catch (Throwable t) {
             attempt1 = t;
+          } finally {
+            if (renderOnDemand) {
+              context.item().view.get().setOpacity(opacity);
+            }
           }
 
           Throwable attempt2 = null;
-          if (image == null && SettingsManager.isMonocle()) {
+          //the screen isn't painted when rendering on demand
+          if (image == null && SettingsManager.isMonocle() && !renderOnDemand) {
             try {
               final Stage stage = context.item().stage.get();
               final Scene scene = stage.getScene();
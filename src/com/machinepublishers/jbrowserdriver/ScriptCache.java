@@ -0,0 +1,112 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2016 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import netscape.javascript.JSObject;
+
+/**
+ * Functions compiled from the scripts passed to <code>executeScript</code> and <code>executeAsyncScript</code>,
+ * kept per document so that running a script again is a single function call.
+ * <p>
+ * Only used on the JavaFX thread. Cleared when the page navigates, and the functions of other documents,
+ * such as those of frames, are dropped once their document is collected.
+ */
+class ScriptCache {
+  private static final int MAX_SCRIPTS = 256;
+  private static final String CALLBACK = new StringBuilder()
+      .append("(function(){return function(callback){return function(){")
+      .append("callback.complete(arguments && arguments.length > 0? arguments[0] : null);")
+      .append("};};})();").toString();
+  private final Map<Object, Map<String, JSObject>> documents = new WeakHashMap<Object, Map<String, JSObject>>();
+  private final Map<Object, Map<String, JSObject>> helpers = new WeakHashMap<Object, Map<String, JSObject>>();
+
+  /**
+   * @return Function of the script which runs with <code>this</code> set to its first argument,
+   *         compiled in the document of the node
+   */
+  JSObject function(JSObject node, String script) {
+    Object document = document(node);
+    Map<String, JSObject> functions = documents.get(document);
+    if (functions == null) {
+      functions = new LinkedHashMap<String, JSObject>(16, .75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, JSObject> eldest) {
+          return size() > MAX_SCRIPTS;
+        }
+      };
+      documents.put(document, functions);
+    }
+    JSObject function = functions.get(script);
+    if (function == null) {
+      function = (JSObject) node.eval(new StringBuilder()
+          .append("(function(){return function(){").append(script).append("\n};})();").toString());
+      functions.put(script, function);
+    }
+    return function;
+  }
+
+  /**
+   * @return Function for the page to call when an async script completes, compiled in the document of the node
+   */
+  JSObject callback(JSObject node, ElementServer.Callback callback) {
+    return (JSObject) helper(node, CALLBACK).call("call", null, callback);
+  }
+
+  /**
+   * @param source
+   *          Script evaluating to a function, which is one of a few used internally
+   * @return The function, compiled in the document of the node
+   */
+  JSObject helper(JSObject node, String source) {
+    Object document = document(node);
+    Map<String, JSObject> functions = helpers.get(document);
+    if (functions == null) {
+      functions = new HashMap<String, JSObject>();
+      helpers.put(document, functions);
+    }
+    JSObject function = functions.get(source);
+    if (function == null) {
+      function = (JSObject) node.eval(source);
+      functions.put(source, function);
+    }
+    return function;
+  }
+
+  void clear() {
+    documents.clear();
+    helpers.clear();
+  }
+
+  private static Object document(JSObject node) {
+    if (node instanceof Node && !(node instanceof Document)) {
+      Document document = ((Node) node).getOwnerDocument();
+      if (document != null) {
+        return document;
+      }
+    }
+    return node;
+  }
+}
@@ -0,0 +1,267 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2016 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import netscape.javascript.JSObject;
+
+/**
+ * Converts script results which are pure data in a single pass. The page serializes the result as JSON,
+ * replacing DOM nodes with placeholders indexed into a side table, and the JSON is decoded here.
+ */
+class ScriptResults {
+  private static final String NODE = "\u0001n";
+  private static final String NUMBER = "\u0001d";
+
+  /**
+   * Source of a function taking a script result, and returning an array of its JSON and its nodes,
+   * or <code>null</code> if it can't be serialized.
+   */
+  static final String MARSHAL = new StringBuilder()
+      .append("(function(){return function(value){")
+      .append("var nodes = [];")
+      .append("try{")
+      .append("var json = JSON.stringify(value, function(key, val){")
+      .append("if(val === undefined || val === null){return null;}")
+      .append("var type = typeof val;")
+      .append("if(type === 'number'){return isFinite(val)? val : {'\\u0001d':String(val)};}")
+      .append("if(type === 'function'){return String(val);}")
+      .append("if(type !== 'object'){return val;}")
+      .append("if(typeof val.nodeType === 'number' && typeof val.nodeName === 'string'){")
+      .append("nodes.push(val);")
+      .append("return {'\\u0001n':nodes.length - 1};")
+      .append("}")
+      .append("if(!Array.isArray(val) && val[0] !== undefined){")
+      .append("var list = [];")
+      .append("for(var i = 0; val[i] !== undefined; i++){list.push(val[i]);}")
+      .append("return list;")
+      .append("}")
+      .append("return val;")
+      .append("});")
+      .append("return json === undefined? null : [json, nodes];")
+      .append("}catch(ex){return null;}")
+      .append("};})();").toString();
+
+  interface Nodes {
+    Object node(int index);
+  }
+
+  private final String json;
+  private final Nodes nodes;
+  private int pos;
+
+  private ScriptResults(String json, Nodes nodes) {
+    this.json = json;
+    this.nodes = nodes;
+  }
+
+  /**
+   * @param json
+   *          JSON produced by {@link #MARSHAL}
+   * @param nodes
+   *          Resolves the node placeholders
+   * @return Lists, maps, strings, booleans, longs, doubles, and the resolved nodes
+   */
+  static Object decode(String json, Nodes nodes) {
+    ScriptResults results = new ScriptResults(json, nodes);
+    Object value = results.value();
+    results.whitespace();
+    if (results.pos != json.length()) {
+      throw results.error();
+    }
+    return value;
+  }
+
+  /**
+   * @return The JSON and node array of the marshalled result, or <code>null</code>
+   */
+  static Object[] unpack(Object marshalled) {
+    if (marshalled instanceof JSObject) {
+      Object json = ((JSObject) marshalled).getSlot(0);
+      Object nodes = ((JSObject) marshalled).getSlot(1);
+      if (json instanceof String && nodes instanceof JSObject) {
+        return new Object[] { json, nodes };
+      }
+    }
+    return null;
+  }
+
+  private Object value() {
+    whitespace();
+    if (pos == json.length()) {
+      throw error();
+    }
+    char c = json.charAt(pos);
+    if (c == '{') {
+      return object();
+    }
+    if (c == '[') {
+      return array();
+    }
+    if (c == '"') {
+      return string();
+    }
+    if (json.startsWith("true", pos)) {
+      pos += 4;
+      return Boolean.TRUE;
+    }
+    if (json.startsWith("false", pos)) {
+      pos += 5;
+      return Boolean.FALSE;
+    }
+    if (json.startsWith("null", pos)) {
+      pos += 4;
+      return null;
+    }
+    return number();
+  }
+
+  private Object object() {
+    ++pos;
+    Map<String, Object> map = new LinkedHashMap<String, Object>();
+    whitespace();
+    if (json.charAt(pos) == '}') {
+      ++pos;
+      return map;
+    }
+    while (true) {
+      whitespace();
+      String key = string();
+      whitespace();
+      expect(':');
+      map.put(key, value());
+      whitespace();
+      if (json.charAt(pos) == ',') {
+        ++pos;
+      } else {
+        expect('}');
+        break;
+      }
+    }
+    if (map.size() == 1) {
+      if (map.containsKey(NODE)) {
+        return nodes.node(((Long) map.get(NODE)).intValue());
+      }
+      if (map.containsKey(NUMBER)) {
+        return Double.parseDouble((String) map.get(NUMBER));
+      }
+    }
+    return map;
+  }
+
+  private List<Object> array() {
+    ++pos;
+    List<Object> list = new ArrayList<Object>();
+    whitespace();
+    if (json.charAt(pos) == ']') {
+      ++pos;
+      return list;
+    }
+    while (true) {
+      list.add(value());
+      whitespace();
+      if (json.charAt(pos) == ',') {
+        ++pos;
+      } else {
+        expect(']');
+        break;
+      }
+    }
+    return list;
+  }
+
+  private String string() {
+    expect('"');
+    StringBuilder builder = new StringBuilder();
+    for (char c; (c = json.charAt(pos++)) != '"';) {
+      if (c == '\\') {
+        c = json.charAt(pos++);
+        switch (c) {
+          case 'b':
+            builder.append('\b');
+            break;
+          case 'f':
+            builder.append('\f');
+            break;
+          case 'n':
+            builder.append('\n');
+            break;
+          case 'r':
+            builder.append('\r');
+            break;
+          case 't':
+            builder.append('\t');
+            break;
+          case 'u':
+            builder.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+            pos += 4;
+            break;
+          default:
+            builder.append(c);
+        }
+      } else {
+        builder.append(c);
+      }
+    }
+    return builder.toString();
+  }
+
+  private Object number() {
+    int start = pos;
+    boolean integral = true;
+    for (; pos < json.length(); pos++) {
+      char c = json.charAt(pos);
+      if (c == '.' || c == 'e' || c == 'E') {
+        integral = false;
+      } else if (c != '-' && c != '+' && (c < '0' || c > '9')) {
+        break;
+      }
+    }
+    if (start == pos) {
+      throw error();
+    }
+    String number = json.substring(start, pos);
+    if (integral) {
+      try {
+        return Long.parseLong(number);
+      } catch (NumberFormatException e) {}
+    }
+    return Double.parseDouble(number);
+  }
+
+  private void whitespace() {
+    while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+      ++pos;
+    }
+  }
+
+  private void expect(char c) {
+    if (pos >= json.length() || json.charAt(pos) != c) {
+      throw error();
+    }
+    ++pos;
+  }
+
+  private IllegalArgumentException error() {
+    return new IllegalArgumentException("Malformed script result at position " + pos + ".");
+  }
+}
@@ -0,0 +1,959 @@
+/* 
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2016 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.apache.http.client.cache.HttpCacheEntry;
+import org.apache.http.client.cache.HttpCacheStorage;
+import org.apache.http.client.cache.HttpCacheUpdateCallback;
+import org.apache.http.client.cache.HttpCacheUpdateException;
+
+/**
+ * Web cache stored as a log of records appended to large segment files, instead of a file per entry.
+ * <p>
+ * Each record holds a key and its serialized entry, or no entry if the key was removed, with a checksum.
+ * An in-memory index maps each key to the location of its latest entry, which is read through a memory mapping
+ * of its segment. The index is rebuilt by replaying the segments in order when the cache is opened, and a record
+ * torn by a crash ends its segment. Segments which are mostly superseded are compacted in the background by copying
+ * their live records to the newest segment.
+ * <p>
+ * Several processes can share a directory, and browsers in the same process share the cache of a directory.
+ * One process at a time is the writer, which holds a lock on the directory and is the only one appending to
+ * the segments. The others read the segments too, replaying what the writer has appended since they last looked,
+ * so an entry stored by any process is stored once for all of them. They pass their own entries to the writer
+ * through an inbox file each, which the writer polls and copies into the log. When the writer closes the cache
+ * or exits, another process takes its place.
+ */
+class SegmentCache implements HttpCacheStorage, Closeable {
+  private static final int MAGIC = 0x4a424443;
+  private static final int HEADER = 16;
+  private static final long SEGMENT_SIZE = 64 * 1024 * 1024;
+  private static final double COMPACT_RATIO = .5;
+  private static final int MAX_INBOXES = 1024;
+  private static final long POLL_MILLIS = 200;
+  private static final long REFRESH_MILLIS = 100;
+  private static final String LOCK_FILE = "segments.lock";
+  private static final String INGESTED = "\u0000ingested-";
+  private static final Map<File, SegmentCache> caches = new HashMap<File, SegmentCache>();
+  private static final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "jBrowserDriver cache");
+    thread.setDaemon(true);
+    return thread;
+  });
+  private final File dir;
+  private final RandomAccessFile lockFile;
+  private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
+  private final Map<String, Location> index = new HashMap<String, Location>();
+  private final TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+  private final Map<Integer, Segment> inboxes = new HashMap<Integer, Segment>();
+  private volatile FileLock lock;
+  private volatile long refreshed;
+  private volatile boolean closed;
+  private FileLock slot;
+  private Segment inbox;
+  private int inboxId = -1;
+  private Segment active;
+  private ScheduledFuture<?> polling;
+  private int references;
+  private boolean compacting;
+
+  private static class Location {
+    private final int segment;
+    private final int offset;
+    private final int length;
+    private final int record;
+
+    /**
+     * @param offset
+     *          Offset of the entry in its segment
+     * @param length
+     *          Length of the entry
+     * @param record
+     *          Length of the whole record holding the entry
+     */
+    Location(int segment, int offset, int length, int record) {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+      this.record = record;
+    }
+  }
+
+  private static class Segment {
+    private final int id;
+    private final File file;
+    private final RandomAccessFile raf;
+    private long size;
+    //bytes of the records which hold the latest entry of their key
+    private long live;
+    private MappedByteBuffer map;
+
+    /**
+     * @param id
+     *          Position in the log, or a negative number for an inbox
+     */
+    Segment(File file, int id, boolean writable) throws IOException {
+      this.id = id;
+      this.file = file;
+      this.raf = new RandomAccessFile(file, writable ? "rw" : "r");
+    }
+
+    ByteBuffer read(Location location) throws IOException {
+      MappedByteBuffer mapped;
+      synchronized (this) {
+        if (map == null || location.offset + location.length > map.capacity()) {
+          map = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        mapped = map;
+      }
+      ByteBuffer buffer = mapped.duplicate();
+      buffer.position(location.offset);
+      buffer.limit(location.offset + location.length);
+      return buffer.slice();
+    }
+  }
+
+  private static class BufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    BufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      length = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, length);
+      return length;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+
+  private interface Visitor {
+    /**
+     * @param value
+     *          Serialized entry, or <code>null</code> if the key was removed
+     */
+    void record(String key, int offset, byte[] value) throws IOException;
+  }
+
+  private SegmentCache(File dir, RandomAccessFile lockFile) {
+    this.dir = dir;
+    this.lockFile = lockFile;
+  }
+
+  /**
+   * Opens the cache in a directory, or shares the cache already open in this process.
+   * Each call must be matched by a call to {@link #close()}.
+   *
+   * @throws IOException
+   *           if the directory can't be read
+   */
+  static SegmentCache open(File dir) throws IOException {
+    dir = dir.getCanonicalFile();
+    synchronized (caches) {
+      SegmentCache cache = caches.get(dir);
+      if (cache == null) {
+        dir.mkdirs();
+        cache = new SegmentCache(dir, new RandomAccessFile(new File(dir, LOCK_FILE), "rw"));
+        try {
+          cache.load(tryLock(cache.lockFile, 0));
+        } catch (IOException e) {
+          cache.release();
+          throw e;
+        }
+        caches.put(dir, cache);
+      }
+      ++cache.references;
+      return cache;
+    }
+  }
+
+  /**
+   * Locks one byte of the lock file: the first byte is held by the writer, and each following byte
+   * by the process using the inbox of the same number.
+   *
+   * @return The lock, or <code>null</code> if another process holds it
+   */
+  private static FileLock tryLock(RandomAccessFile lockFile, long position) {
+    try {
+      return lockFile.getChannel().tryLock(position, 1, false);
+    } catch (Throwable t) {
+      return null;
+    }
+  }
+
+  private static File segmentFile(File dir, int id) {
+    return new File(dir, String.format("segment-%08d.jbd", id));
+  }
+
+  private static File inboxFile(File dir, int number) {
+    return new File(dir, String.format("inbox-%08d.jbd", number));
+  }
+
+  /**
+   * @return The number in a file name like <code>prefix-00000001.jbd</code>, or -1 if it isn't such a name
+   */
+  private static int number(String name, String prefix) {
+    if (name.startsWith(prefix) && name.endsWith(".jbd")) {
+      try {
+        return Integer.parseInt(name.substring(prefix.length(), name.length() - ".jbd".length()));
+      } catch (NumberFormatException e) {}
+    }
+    return -1;
+  }
+
+  /**
+   * @param lock
+   *          Lock held by the writer, or <code>null</code> if another process is the writer
+   */
+  private void load(FileLock lock) throws IOException {
+    this.lock = lock;
+    File[] files = dir.listFiles();
+    for (int i = 0; files != null && i < files.length; i++) {
+      int id = number(files[i].getName(), "segment-");
+      if (id > -1) {
+        try {
+          segments.put(id, new Segment(files[i], id, lock != null));
+        } catch (FileNotFoundException e) {
+          //compacted by the writer since listing
+        }
+      }
+    }
+    for (Segment segment : segments.values()) {
+      replay(segment);
+      if (lock != null && segment.size < segment.raf.length()) {
+        //a record was torn by a crash
+        segment.raf.setLength(segment.size);
+      }
+    }
+    refreshed = System.currentTimeMillis();
+    if (lock != null) {
+      active = segments.isEmpty() ? null : segments.lastEntry().getValue();
+      compactLater();
+    }
+    polling = worker.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        poll();
+      }
+    }, POLL_MILLIS, POLL_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Indexes the records of a segment after those already indexed. Requires the write lock.
+   */
+  private void replay(final Segment segment) throws IOException {
+    segment.size = scan(segment, segment.size, new Visitor() {
+      @Override
+      public void record(String key, int offset, byte[] value) {
+        if (value == null) {
+          supersede(index.remove(key));
+        } else {
+          Location location = new Location(segment.id, offset, value.length,
+              HEADER + key.getBytes(StandardCharsets.UTF_8).length + value.length);
+          supersede(index.put(key, location));
+          segment.live += location.record;
+        }
+      }
+    });
+  }
+
+  /**
+   * Indexes the records appended by the writer since the last refresh, and forgets the segments it has
+   * compacted. Requires the write lock.
+   */
+  private void refresh() throws IOException {
+    NavigableMap<Integer, Segment> log = segments.tailMap(0, true);
+    int last = log.isEmpty() ? -1 : log.lastKey();
+    List<Segment> deleted = new ArrayList<Segment>();
+    for (Segment segment : log.values()) {
+      //checked before replaying, so the copies of their live records are replayed too
+      if (!segment.file.exists()) {
+        deleted.add(segment);
+      }
+    }
+    for (Segment segment : log.values()) {
+      if (!deleted.contains(segment)) {
+        replay(segment);
+      }
+    }
+    TreeMap<Integer, File> created = new TreeMap<Integer, File>();
+    File[] files = dir.listFiles();
+    for (int i = 0; files != null && i < files.length; i++) {
+      int id = number(files[i].getName(), "segment-");
+      if (id > last) {
+        created.put(id, files[i]);
+      }
+    }
+    for (Map.Entry<Integer, File> entry : created.entrySet()) {
+      try {
+        Segment segment = new Segment(entry.getValue(), entry.getKey(), false);
+        segments.put(segment.id, segment);
+        replay(segment);
+      } catch (FileNotFoundException e) {
+        //compacted by the writer since listing
+      }
+    }
+    for (Segment segment : deleted) {
+      final int id = segment.id;
+      segments.remove(id);
+      Util.close(segment.raf);
+      index.values().removeIf(location -> location.segment == id);
+    }
+    refreshed = System.currentTimeMillis();
+  }
+
+  /**
+   * Reads the valid records of a segment in order.
+   *
+   * @param from
+   *          Offset of the first record to read
+   * @return The end of the last valid record
+   */
+  private static long scan(Segment segment, long from, Visitor visitor) throws IOException {
+    FileChannel channel = segment.raf.getChannel();
+    long size = channel.size();
+    long pos = from;
+    ByteBuffer header = ByteBuffer.allocate(HEADER);
+    while (pos + HEADER <= size) {
+      header.clear();
+      while (header.hasRemaining() && channel.read(header, pos + header.position()) > 0);
+      header.flip();
+      int magic = header.getInt();
+      int keyLength = header.getInt();
+      int valueLength = header.getInt();
+      int checksum = header.getInt();
+      if (magic != MAGIC || keyLength < 0 || valueLength < -1
+          || pos + HEADER + keyLength + Math.max(0, valueLength) > size) {
+        break;
+      }
+      ByteBuffer body = ByteBuffer.allocate(keyLength + Math.max(0, valueLength));
+      while (body.hasRemaining() && channel.read(body, pos + HEADER + body.position()) > 0);
+      byte[] bytes = body.array();
+      if (checksum(bytes, keyLength, valueLength) != checksum) {
+        break;
+      }
+      String key = new String(bytes, 0, keyLength, StandardCharsets.UTF_8);
+      byte[] value = null;
+      if (valueLength >= 0) {
+        value = new byte[valueLength];
+        System.arraycopy(bytes, keyLength, value, 0, valueLength);
+      }
+      visitor.record(key, (int) (pos + HEADER + keyLength), value);
+      pos += HEADER + bytes.length;
+    }
+    return pos;
+  }
+
+  private static int checksum(byte[] bytes, int keyLength, int valueLength) {
+    CRC32 crc = new CRC32();
+    crc.update(ByteBuffer.allocate(8).putInt(keyLength).putInt(valueLength).array());
+    crc.update(bytes, 0, bytes.length);
+    return (int) crc.getValue();
+  }
+
+  /**
+   * @param value
+   *          Serialized entry, or <code>null</code> to remove the key
+   * @return The record, ready to be written
+   */
+  private static ByteBuffer record(String key, byte[] value) {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    int valueLength = value == null ? -1 : value.length;
+    byte[] body = new byte[keyBytes.length + Math.max(0, valueLength)];
+    System.arraycopy(keyBytes, 0, body, 0, keyBytes.length);
+    if (value != null) {
+      System.arraycopy(value, 0, body, keyBytes.length, value.length);
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER + body.length);
+    buffer.putInt(MAGIC).putInt(keyBytes.length).putInt(valueLength).putInt(checksum(body, keyBytes.length, valueLength));
+    buffer.put(body);
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Appends a record to the end of a segment. Requires the write lock.
+   *
+   * @return Location of the entry, or <code>null</code> if it was removed
+   */
+  private static Location write(Segment segment, ByteBuffer record) throws IOException {
+    int keyLength = record.getInt(4);
+    int valueLength = record.getInt(8);
+    FileChannel channel = segment.raf.getChannel();
+    long pos = segment.size;
+    while (record.hasRemaining()) {
+      channel.write(record, pos + record.position());
+    }
+    segment.size += record.limit();
+    if (valueLength < 0) {
+      return null;
+    }
+    segment.live += record.limit();
+    return new Location(segment.id, (int) (pos + HEADER + keyLength), valueLength, record.limit());
+  }
+
+  /**
+   * Appends a record to the newest segment. Requires the write lock, and that this process is the writer.
+   *
+   * @param value
+   *          Serialized entry, or <code>null</code> to remove the key
+   * @return Location of the entry, or <code>null</code> if it was removed
+   */
+  private Location append(String key, byte[] value) throws IOException {
+    ByteBuffer record = record(key, value);
+    if (active == null || (active.size > 0 && active.size + record.limit() > SEGMENT_SIZE)) {
+      int id = active == null ? 0 : active.id + 1;
+      active = new Segment(segmentFile(dir, id), id, true);
+      segments.put(active.id, active);
+      compactLater();
+    }
+    return write(active, record);
+  }
+
+  /**
+   * Stores an entry, in the log if this process is the writer and otherwise in this process's inbox.
+   * Requires the write lock.
+   *
+   * @param value
+   *          Serialized entry, or <code>null</code> to remove the key
+   */
+  private void store(String key, byte[] value) throws IOException {
+    if (lock != null) {
+      if (value != null) {
+        supersede(index.put(key, append(key, value)));
+      } else if (index.containsKey(key)) {
+        append(key, null);
+        supersede(index.remove(key));
+      }
+    } else {
+      //the writer may hold the key even if it isn't indexed here yet, so removals are always passed on
+      ByteBuffer record = record(key, value);
+      Segment target = inbox(record.limit());
+      if (target != null) {
+        Location location = write(target, record);
+        supersede(value == null ? index.remove(key) : index.put(key, location));
+      }
+    }
+  }
+
+  /**
+   * Claims an inbox for this process if it has none or its inbox is full. Requires the write lock.
+   *
+   * @return This process's inbox, or <code>null</code> if every inbox is in use
+   */
+  private Segment inbox(int length) throws IOException {
+    if (inbox != null && (inbox.size == 0 || inbox.size + length <= SEGMENT_SIZE)) {
+      return inbox;
+    }
+    //a full inbox is held until another is claimed, so that it isn't claimed again
+    for (int i = 0; i < MAX_INBOXES; i++) {
+      FileLock claimed = tryLock(lockFile, 1 + i);
+      if (claimed != null) {
+        Segment next;
+        try {
+          next = new Segment(inboxFile(dir, i), inboxId--, true);
+          next.size = scan(next, 0, new Visitor() {
+            @Override
+            public void record(String key, int offset, byte[] value) {}
+          });
+          if (next.size < next.raf.length()) {
+            //a record was torn by a crash of the process which used it before
+            next.raf.setLength(next.size);
+          }
+        } catch (IOException e) {
+          claimed.release();
+          throw e;
+        }
+        retire();
+        inbox = next;
+        slot = claimed;
+        segments.put(inbox.id, inbox);
+        return inbox;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Stops writing to this process's inbox, leaving the rest of its records to the writer.
+   * Requires the write lock.
+   */
+  private void retire() {
+    if (inbox != null) {
+      final int id = inbox.id;
+      segments.remove(id);
+      Util.close(inbox.raf);
+      index.values().removeIf(location -> location.segment == id);
+      inbox = null;
+    }
+    if (slot != null) {
+      try {
+        slot.release();
+      } catch (Throwable t) {}
+      slot = null;
+    }
+  }
+
+  private void supersede(Location location) {
+    if (location != null) {
+      Segment segment = segments.get(location.segment);
+      if (segment != null) {
+        segment.live -= location.record;
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void updateEntry(String key, HttpCacheUpdateCallback callback) throws IOException, HttpCacheUpdateException {
+    HttpCacheEntry entry = callback.update(getEntry(key));
+    putEntry(key, entry);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void removeEntry(String key) throws IOException {
+    rwLock.writeLock().lock();
+    try {
+      if (!closed) {
+        store(key, null);
+      }
+    } finally {
+      rwLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void putEntry(String key, HttpCacheEntry entry) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+      objectOut.writeObject(entry);
+    }
+    rwLock.writeLock().lock();
+    try {
+      if (!closed) {
+        store(key, bytes.toByteArray());
+      }
+    } finally {
+      rwLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public HttpCacheEntry getEntry(String key) throws IOException {
+    refreshIfStale();
+    ByteBuffer bytes;
+    rwLock.readLock().lock();
+    try {
+      Location location = closed ? null : index.get(key);
+      if (location == null) {
+        return null;
+      }
+      bytes = segments.get(location.segment).read(location);
+    } finally {
+      rwLock.readLock().unlock();
+    }
+    //deserialized straight from the mapping, which the page cache shares among processes
+    try (ObjectInputStream objectIn = new ObjectInputStream(new BufferInputStream(bytes))) {
+      return (HttpCacheEntry) objectIn.readObject();
+    } catch (Throwable t) {
+      LogsServer.instance().exception(t);
+    }
+    return null;
+  }
+
+  /**
+   * Identifies the entry stored for a key, so that copies of it kept elsewhere can be checked.
+   * A different version is returned after the entry is stored again or removed, by any process.
+   *
+   * @return Version of the entry, or <code>null</code> if there's none
+   */
+  Object version(String key) throws IOException {
+    refreshIfStale();
+    rwLock.readLock().lock();
+    try {
+      return closed ? null : index.get(key);
+    } finally {
+      rwLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Reads the entries other processes have stored, if this process isn't the writer and hasn't for a while.
+   */
+  private void refreshIfStale() throws IOException {
+    if (lock == null && System.currentTimeMillis() - refreshed > REFRESH_MILLIS) {
+      rwLock.writeLock().lock();
+      try {
+        if (!closed && lock == null && System.currentTimeMillis() - refreshed > REFRESH_MILLIS) {
+          refresh();
+        }
+      } finally {
+        rwLock.writeLock().unlock();
+      }
+    }
+  }
+
+  private void poll() {
+    try {
+      if (lock != null) {
+        ingest();
+      } else {
+        promote();
+      }
+    } catch (Throwable t) {
+      if (!closed) {
+        LogsServer.instance().exception(t);
+      }
+    }
+  }
+
+  /**
+   * Becomes the writer if the writer has closed the cache or exited.
+   */
+  private void promote() throws IOException {
+    FileLock acquired = tryLock(lockFile, 0);
+    if (acquired == null) {
+      return;
+    }
+    rwLock.writeLock().lock();
+    try {
+      if (closed) {
+        acquired.release();
+        return;
+      }
+      refresh();
+      if (!segments.tailMap(0, true).isEmpty()) {
+        Segment last = segments.lastEntry().getValue();
+        active = new Segment(last.file, last.id, true);
+        active.size = last.size;
+        active.live = last.live;
+        Util.close(last.raf);
+        if (active.size < active.raf.length()) {
+          //a record was torn by a crash of the writer
+          active.raf.setLength(active.size);
+        }
+        segments.put(active.id, active);
+      }
+      lock = acquired;
+    } finally {
+      rwLock.writeLock().unlock();
+    }
+    ingest();
+    rwLock.writeLock().lock();
+    try {
+      retire();
+    } finally {
+      rwLock.writeLock().unlock();
+    }
+    compactLater();
+  }
+
+  /**
+   * Copies the records which other processes have written to their inboxes into the log. An inbox whose
+   * process has stopped using it is emptied once copied, so that it can be claimed again.
+   * The end of what was copied from each inbox is recorded in the log too, so that another writer resumes there.
+   */
+  private void ingest() throws IOException {
+    File[] files = dir.listFiles();
+    for (int i = 0; files != null && i < files.length && !closed; i++) {
+      final int number = number(files[i].getName(), "inbox-");
+      if (number < 0) {
+        continue;
+      }
+      FileLock abandoned = tryLock(lockFile, 1 + number);
+      try {
+        Segment inbox;
+        rwLock.writeLock().lock();
+        try {
+          if (closed) {
+            return;
+          }
+          inbox = inboxes.get(number);
+          if (inbox == null) {
+            inbox = new Segment(files[i], -1, true);
+            inbox.size = ingested(number);
+            inboxes.put(number, inbox);
+          }
+        } finally {
+          rwLock.writeLock().unlock();
+        }
+        long end = scan(inbox, inbox.size, new Visitor() {
+          @Override
+          public void record(String key, int offset, byte[] value) throws IOException {
+            rwLock.writeLock().lock();
+            try {
+              if (!closed) {
+                store(key, value);
+              }
+            } finally {
+              rwLock.writeLock().unlock();
+            }
+          }
+        });
+        rwLock.writeLock().lock();
+        try {
+          boolean empty = !closed && abandoned != null && inbox.raf.length() > 0;
+          if (empty) {
+            end = 0;
+          }
+          if (!closed && end != inbox.size) {
+            inbox.size = end;
+            store(INGESTED + number, ByteBuffer.allocate(8).putLong(end).array());
+          }
+          if (empty) {
+            //emptied after its end is recorded, so that a crash in between copies it again rather than skipping it
+            inbox.raf.setLength(0);
+          }
+        } finally {
+          rwLock.writeLock().unlock();
+        }
+      } finally {
+        if (abandoned != null) {
+          abandoned.release();
+        }
+      }
+    }
+  }
+
+  /**
+   * @return The end of what was copied from an inbox. Requires the lock.
+   */
+  private long ingested(int number) throws IOException {
+    Location location = index.get(INGESTED + number);
+    return location == null ? 0 : segments.get(location.segment).read(location).getLong();
+  }
+
+  private void compactLater() {
+    synchronized (caches) {
+      if (compacting || closed) {
+        return;
+      }
+      compacting = true;
+    }
+    worker.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          compact();
+        } catch (Throwable t) {
+          LogsServer.instance().exception(t);
+        } finally {
+          synchronized (caches) {
+            compacting = false;
+          }
+        }
+      }
+    });
+  }
+  /**
+   * Copies the live records of sealed segments which are mostly superseded to the newest segment,
+   * and deletes them.
+   */
+  private void compact() throws IOException {
+    while (true) {
+      final Segment victim;
+      final List<Segment> older;
+      rwLock.readLock().lock();
+      try {
+        Segment found = null;
+        for (Segment segment : segments.tailMap(0, true).values()) {
+          if (segment != active && (segment.size == 0 || segment.live < segment.size * COMPACT_RATIO)) {
+            found = segment;
+            break;
+          }
+        }
+        if (closed || found == null) {
+          return;
+        }
+        victim = found;
+        older = new ArrayList<Segment>(segments.subMap(0, true, victim.id, false).values());
+      } finally {
+        rwLock.readLock().unlock();
+      }
+      //sealed segments aren't written, so they can be read without the lock
+      final Set<String> hidden = hidden(victim, older);
+      scan(victim, 0, new Visitor() {
+        @Override
+        public void record(String key, int offset, byte[] value) throws IOException {
+          rwLock.writeLock().lock();
+          try {
+            if (closed) {
+              return;
+            }
+            Location location = index.get(key);
+            if (value != null && location != null
+                && location.segment == victim.id && location.offset == offset) {
+              supersede(index.put(key, append(key, value)));
+            } else if (value == null && location == null && hidden.contains(key)) {
+              //still hides the key's entries in older segments
+              append(key, null);
+            }
+          } finally {
+            rwLock.writeLock().unlock();
+          }
+        }
+      });
+      rwLock.writeLock().lock();
+      try {
+        if (closed) {
+          return;
+        }
+        segments.remove(victim.id);
+        Util.close(victim.raf);
+        if (!victim.file.delete()) {
+          //may still be mapped
+          victim.file.deleteOnExit();
+        }
+      } finally {
+        rwLock.writeLock().unlock();
+      }
+    }
+  }
+
+  /**
+   * @return The keys removed in the segment which older segments still have entries for,
+   *         whose removal markers need to be kept
+   */
+  private static Set<String> hidden(Segment segment, List<Segment> older) throws IOException {
+    final Set<String> removed = new HashSet<String>();
+    if (!older.isEmpty()) {
+      scan(segment, 0, new Visitor() {
+        @Override
+        public void record(String key, int offset, byte[] value) {
+          if (value == null) {
+            removed.add(key);
+          }
+        }
+      });
+    }
+    final Set<String> hidden = new HashSet<String>();
+    for (Segment cur : older) {
+      if (hidden.size() == removed.size()) {
+        break;
+      }
+      scan(cur, 0, new Visitor() {
+        @Override
+        public void record(String key, int offset, byte[] value) {
+          if (value != null && removed.contains(key)) {
+            hidden.add(key);
+          }
+        }
+      });
+    }
+    return hidden;
+  }
+
+  private void release() {
+    rwLock.writeLock().lock();
+    try {
+      closed = true;
+      if (polling != null) {
+        polling.cancel(false);
+      }
+      retire();
+      for (Segment segment : segments.values()) {
+        Util.close(segment.raf);
+      }
+      for (Segment segment : inboxes.values()) {
+        Util.close(segment.raf);
+      }
+      segments.clear();
+      inboxes.clear();
+      index.clear();
+      if (lock != null) {
+        try {
+          lock.release();
+        } catch (Throwable t) {}
+      }
+      Util.close(lockFile);
+    } finally {
+      rwLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Releases this use of the cache, and closes it once no browser in this process uses it.
+   */
+  @Override
+  public void close() {
+    synchronized (caches) {
+      if (--references > 0) {
+        return;
+      }
+      caches.remove(dir);
+    }
+    release();
+  }
+}
@@ -0,0 +1,252 @@
+/*
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2016 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.CookieHandler;
+import java.net.URI;
+import java.nio.file.Files;
+import java.rmi.RemoteException;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * One browser session within a browser process, holding its settings, cookies, logs, page load status,
+ * HTTP client, and download directories. A process hosts a single session unless
+ * {@link Settings.Builder#processSessions(int)} is set.
+ * <p>
+ * Sessions are passed along explicitly where possible. Otherwise {@link #current()} gives the session
+ * whose work the calling thread is doing, as set by {@link #enter(Session)}.
+ */
+class Session {
+  private static final String USER_AGENT_MARKER = " jbd-session/";
+  private static final int MAX_HOSTS = 1000;
+  private static final AtomicInteger ids = new AtomicInteger();
+  private static final Map<Integer, Session> sessions = new HashMap<Integer, Session>();
+  private static final ThreadLocal<Session> current = new ThreadLocal<Session>();
+  private static final Map<String, Session> hosts = new LinkedHashMap<String, Session>(16, .75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Session> eldest) {
+      return size() > MAX_HOSTS;
+    }
+  };
+  private static Session primary;
+
+  final int id;
+  final AtomicReference<Settings> settings = new AtomicReference<Settings>();
+  final StatusMonitor statusMonitor = new StatusMonitor(this);
+  final CookieStore cookieStore = new CookieStore();
+  final LogsServer logs;
+  final File attachmentsDir;
+  final File mediaDir;
+  private final AtomicReference<StreamConnectionClient> client = new AtomicReference<StreamConnectionClient>();
+
+  private Session(int id) {
+    this.id = id;
+    LogsServer logsTmp = null;
+    File attachmentsDirTmp = null;
+    File mediaDirTmp = null;
+    try {
+      logsTmp = new LogsServer(this);
+      attachmentsDirTmp = Files.createTempDirectory("jbd_attachments_").toFile();
+      mediaDirTmp = Files.createTempDirectory("jbd_media_").toFile();
+      attachmentsDirTmp.deleteOnExit();
+      mediaDirTmp.deleteOnExit();
+    } catch (Throwable t) {
+      Util.handleException(t);
+    }
+    logs = logsTmp;
+    attachmentsDir = attachmentsDirTmp;
+    mediaDir = mediaDirTmp;
+  }
+
+  /**
+   * @return The session created first, which serves any work not attributed to another session
+   */
+  static Session primary() {
+    synchronized (sessions) {
+      if (primary == null) {
+        primary = create();
+      }
+      return primary;
+    }
+  }
+
+  static Session create() {
+    synchronized (sessions) {
+      Session session = new Session(ids.getAndIncrement());
+      sessions.put(session.id, session);
+      return session;
+    }
+  }
+
+  static int count() {
+    synchronized (sessions) {
+      return sessions.size();
+    }
+  }
+
+  /**
+   * @return The session of the calling thread, or the primary session if it has none
+   */
+  static Session current() {
+    Session session = current.get();
+    return session == null ? primary() : session;
+  }
+
+  /**
+   * Sets the session of the calling thread.
+   *
+   * @return The session the thread had before, to be restored afterwards
+   */
+  static Session enter(Session session) {
+    Session previous = current.get();
+    if (session == null) {
+      current.remove();
+    } else {
+      current.set(session);
+    }
+    return previous;
+  }
+
+  Settings settings() {
+    return settings.get();
+  }
+
+  StreamConnectionClient client() {
+    return client.get();
+  }
+
+  void register(Settings settings) {
+    this.settings.set(settings);
+    if (settings != null) {
+      LogsServer.updateSettings(settings);
+      StreamConnectionClient prevClient = client.getAndSet(new StreamConnectionClient(settings));
+      if (prevClient != null) {
+        prevClient.shutDown();
+      }
+    }
+    SettingsManager.register(settings);
+  }
+
+  /**
+   * Ends the session, releasing its connections and files. Its windows are closed separately.
+   */
+  void close() {
+    synchronized (sessions) {
+      sessions.remove(id);
+    }
+    synchronized (hosts) {
+      for (Iterator<Session> it = hosts.values().iterator(); it.hasNext();) {
+        if (it.next() == this) {
+          it.remove();
+        }
+      }
+    }
+    statusMonitor.clear();
+    cookieStore.clear();
+    StreamConnectionClient prevClient = client.get();
+    if (prevClient != null) {
+      prevClient.shutDown();
+    }
+    FileUtils.deleteQuietly(attachmentsDir);
+    FileUtils.deleteQuietly(mediaDir);
+    try {
+      UnicastRemoteObject.unexportObject(logs, true);
+    } catch (Throwable t) {}
+  }
+
+  /**
+   * WebKit sends its user agent on every request, so sessions other than the primary one
+   * mark it to let requests made on WebKit's network threads find their session.
+   */
+  String markUserAgent(String userAgent) {
+    return id == 0 || userAgent == null ? userAgent : userAgent + USER_AGENT_MARKER + id;
+  }
+
+  static Session forUserAgent(String userAgent) {
+    int index = userAgent == null ? -1 : userAgent.lastIndexOf(USER_AGENT_MARKER);
+    if (index > -1) {
+      try {
+        int id = Integer.parseInt(userAgent.substring(index + USER_AGENT_MARKER.length()));
+        synchronized (sessions) {
+          return sessions.get(id);
+        }
+      } catch (NumberFormatException e) {}
+    }
+    return null;
+  }
+
+  static String unmarkUserAgent(String userAgent) {
+    int index = userAgent == null ? -1 : userAgent.lastIndexOf(USER_AGENT_MARKER);
+    return index > -1 ? userAgent.substring(0, index) : userAgent;
+  }
+
+  /**
+   * Records that this session is loading from the host, so that cookie access by scripts
+   * running outside of any session's work can be attributed to it.
+   */
+  void visit(String host) {
+    if (host != null) {
+      synchronized (hosts) {
+        hosts.put(host.toLowerCase(), this);
+      }
+    }
+  }
+
+  /**
+   * The process-wide cookie handler used by WebKit, which delegates to the cookie store of the
+   * current session or, failing that, of the session which last loaded from the cookie's host.
+   */
+  static class CookieRouter extends CookieHandler {
+    private static CookieStore cookieStore(URI uri) {
+      Session session = current.get();
+      if (session == null && uri.getHost() != null) {
+        synchronized (hosts) {
+          session = hosts.get(uri.getHost().toLowerCase());
+        }
+      }
+      return session == null ? primary().cookieStore : session.cookieStore;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, List<String>> get(URI uri, Map<String, List<String>> requestHeaders) throws IOException {
+      return cookieStore(uri).get(uri, requestHeaders);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void put(URI uri, Map<String, List<String>> responseHeaders) throws IOException {
+      cookieStore(uri).put(uri, responseHeaders);
+    }
+  }
+}
@@ -19,6 +19,8 @@ package com.machinepublishers.jbrowserdriver;
 
 import java.io.File;
 import java.io.Serializable;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -29,6 +31,7 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
+import java.util.regex.Pattern;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
 
@@ -153,6 +156,22 @@ public class Settings implements Serializable {
     JAVA_OPTIONS("jbd.javaoptions"),
     JAVA_BINARY("jbd.javabinary"),
     JAVA_EXPORT_MODULES("jbd.javaexportmodules"),
+    BINARY_PROTOCOL("jbd.binaryprotocol"),
+    UNIX_SOCKET("jbd.unixsocket"),
+    POOL_MIN("jbd.poolmin"),
+    POOL_MAX("jbd.poolmax"),
+    POOL_INIT("jbd.poolinit"),
+    PROCESS_SESSIONS("jbd.processsessions"),
+    CLASSPATH_CACHE_DIR("jbd.classpathcachedir"),
+    CLASS_DATA_SHARING("jbd.classdatasharing"),
+    AJAX_IGNORE_URLS("jbd.ajaxignoreurls"),
+    AJAX_IGNORE_HOSTS("jbd.ajaxignorehosts"),
+    AJAX_IGNORE_CONTENT_TYPES("jbd.ajaxignorecontenttypes"),
+    PAGE_LOAD_STRATEGY("jbd.pageloadstrategy"),
+    RENDER_ON_DEMAND("jbd.renderondemand"),
+    CACHE_MEMORY("jbd.cachememory"),
+    CACHE_SEGMENTS("jbd.cachesegments"),
+    CACHE_POLICY("jbd.cachepolicy"),
     USER_DATA_DIRECTORY("jbd.userdatadirectory"),
     CSRF_REQUEST_TOKEN("jbd.csrfreqtoken"),
     CSRF_RESPONSE_TOKEN("jbd.csrfresptoken"),
@@ -218,6 +237,22 @@ public class Settings implements Serializable {
     private String[] javaOptions;
     private String javaBinary;
     private boolean javaExportModules;
+    private boolean binaryProtocol;
+    private boolean unixSocket;
+    private int poolMin;
+    private int poolMax;
+    private boolean poolInit;
+    private int processSessions = 1;
+    private File classpathCacheDir;
+    private boolean classDataSharing;
+    private String[] ajaxIgnoreUrls;
+    private String[] ajaxIgnoreHosts;
+    private String[] ajaxIgnoreContentTypes;
+    private PageLoadStrategy pageLoadStrategy = PageLoadStrategy.NORMAL;
+    private boolean renderOnDemand;
+    private long cacheMemory = 10 * 1000 * 1000;
+    private boolean cacheSegments;
+    private CachePolicy cachePolicy = CachePolicy.SEGMENTED_LRU;
     private File userDataDirectory;
     private String csrfRequestToken;
     private String csrfResponseToken;
@@ -1119,6 +1154,361 @@ public class Settings implements Serializable {
       return this;
     }
 
+    /**
+     * Send commands to the browser process using a compact binary protocol instead of Java RMI serialization.
+     * <p>
+     * Calls on the driver and on elements (finding elements, getting text and attributes, running scripts, etc.)
+     * are encoded in a fixed binary format and dispatched without RMI. Calls returning other objects
+     * (e.g., {@link JBrowserDriver#manage()} or {@link JBrowserDriver#navigate()}) still use RMI.
+     * <p>
+     * Defaults to <code>false</code>.
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.binaryprotocol</code> overrides this setting.</li>
+     * <li>{@link Capabilities} name <code>jbd.binaryprotocol</code> alternately configures this setting.</li>
+     * </ul><p>
+     *
+     * @param binaryProtocol
+     * @return this Builder
+     */
+    public Builder binaryProtocol(boolean binaryProtocol) {
+      this.binaryProtocol = binaryProtocol;
+      return this;
+    }
+
+    /**
+     * Connect to browser processes over Unix domain sockets rather than loopback TCP.
+     * <p>
+     * No ports are used in this mode, so the limit set by {@link Builder#processes(int)} (or inferred from
+     * {@link Builder#processes(String)}) is simply the number of browser processes that can run concurrently.
+     * <p>
+     * Requires Java 16 or later for both this process and the browser processes. On older versions of Java
+     * a warning is printed and TCP is used instead.
+     * <p>
+     * Defaults to <code>false</code>.
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.unixsocket</code> overrides this setting.</li>
+     * <li>{@link Capabilities} name <code>jbd.unixsocket</code> alternately configures this setting.</li>
+     * </ul><p>
+     *
+     * @param unixSocket
+     * @return this Builder
+     */
+    public Builder unixSocket(boolean unixSocket) {
+      this.unixSocket = unixSocket;
+      return this;
+    }
+
+    /**
+     * Keep spare browser processes launched ahead of time, so that constructing a {@link JBrowserDriver}
+     * leases an already running process instead of waiting for a new one to start.
+     * <p>
+     * At least <code>min</code> spares are kept. While browsers are waiting for a spare, one more is launched per
+     * waiting browser, up to <code>max</code>. Spares count towards the limit set by {@link Builder#processes(int)}.
+     * <p>
+     * Spares are kept per Settings object, so pass the same Settings object to each {@link JBrowserDriver#JBrowserDriver(Settings)}.
+     * <p>
+     * Defaults to <code>0</code> and <code>0</code> (no spares).
+     *
+     * <p><ul>
+     * <li>Java system properties <code>jbd.poolmin</code> and <code>jbd.poolmax</code> override this setting.</li>
+     * <li>{@link Capabilities} names <code>jbd.poolmin</code> and <code>jbd.poolmax</code> alternately configure this setting.</li>
+     * </ul><p>
+     *
+     * @param min
+     * @param max
+     * @return this Builder
+     * @see Builder#poolInit(boolean)
+     */
+    public Builder pool(int min, int max) {
+      this.poolMin = min;
+      this.poolMax = max;
+      return this;
+    }
+
+    /**
+     * Whether spare browser processes (see {@link Builder#pool(int, int)}) also have
+     * JavaFX and the browser window initialized ahead of time, as by {@link JBrowserDriver#init()}.
+     * <p>
+     * Defaults to <code>false</code>.
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.poolinit</code> overrides this setting.</li>
+     * <li>{@link Capabilities} name <code>jbd.poolinit</code> alternately configures this setting.</li>
+     * </ul><p>
+     *
+     * @param poolInit
+     * @return this Builder
+     */
+    public Builder poolInit(boolean poolInit) {
+      this.poolInit = poolInit;
+      return this;
+    }
+
+    /**
+     * Maximum number of browser sessions hosted by one browser process. Each session has its own
+     * settings, cookies, logs, HTTP connections and cache, and windows, but sessions share the process's
+     * memory and JavaFX thread, which saves launching a process per {@link JBrowserDriver}.
+     * <p>
+     * A {@link JBrowserDriver} attaches to a running process with a free session when one exists,
+     * and the process ends once its last session has quit. Sessions are shared per Settings object,
+     * so pass the same Settings object to each {@link JBrowserDriver#JBrowserDriver(Settings)}.
+     * Process-wide options, such as headless mode and Java options, are those of the first session.
+     * <p>
+     * Defaults to <code>1</code> (one session per process).
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.processsessions</code> overrides this setting.</li>
+     * <li>{@link Capabilities} name <code>jbd.processsessions</code> alternately configures this setting.</li>
+     * </ul><p>
+     *
+     * @param processSessions
+     * @return this Builder
+     */
+    public Builder processSessions(int processSessions) {
+      this.processSessions = processSessions;
+      return this;
+    }
+
+    /**
+     * Directory where the classpath of browser processes is kept--this saves unpacking nested jars
+     * on the first launch after each JVM restart. Unpacked jars are named after their contents,
+     * so the directory can be shared by JVMs running different versions of an application.
+     * <p>
+     * The classpath is prepared once per JVM, so only the settings of the first browser launched apply.
+     * Not used when Java options set a custom classpath.
+     * <p>
+     * Defaults to <code>null</code> meaning a temp directory will be generated and deleted on exit.
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.classpathcachedir</code> overrides this setting. Use a string file path as the value.</li>
+     * <li>{@link Capabilities} name <code>jbd.classpathcachedir</code> alternately configures this setting. Use a string file path as the value.</li>
+     * </ul><p>
+     *
+     * @param classpathCacheDir
+     *          classpath cache directory
+     * @return this Builder
+     */
+    public Builder classpathCacheDir(File classpathCacheDir) {
+      this.classpathCacheDir = classpathCacheDir;
+      return this;
+    }
+
+    /**
+     * Whether browser processes share an archive of the classes they load at startup (AppCDS),
+     * which shortens the startup of each process after the first. The archive is recorded when
+     * the first browser process to use it quits, and it's kept in the {@link #classpathCacheDir(File)}
+     * so that it's reused after JVM restarts.
+     * <p>
+     * Requires Java 13 or later for the browser processes. Otherwise, or if the archive doesn't match
+     * the Java binary or classpath, it is ignored. Not used when Java options set a custom classpath.
+     * Startup times are logged at the <code>FINE</code> level to the {@link #logger(String)}.
+     * <p>
+     * Defaults to <code>false</code>.
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.classdatasharing</code> overrides this setting.</li>
+     * <li>{@link Capabilities} name <code>jbd.classdatasharing</code> alternately configures this setting.</li>
+     * </ul><p>
+     *
+     * @param classDataSharing
+     * @return this Builder
+     */
+    public Builder classDataSharing(boolean classDataSharing) {
+      this.classDataSharing = classDataSharing;
+      return this;
+    }
+
+    /**
+     * Requests which don't count as pending when deciding whether a page has finished loading,
+     * such as long-polling, server-sent events, beacons, or analytics. The requests still load normally.
+     * <p>
+     * Each regular expression is a separate string in the array passed in, and a request is excluded
+     * if any of them is found in its URL. E.g.,
+     * <p>
+     * <code>
+     * .ajaxIgnoreUrls("/poll\\?", "/collect\\b", "\\.gif\\?")
+     * </code>
+     * <p>
+     * By default no requests are excluded.
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.ajaxignoreurls</code> overrides this setting. The expressions must be separated by tab (\t).</li>
+     * <li>{@link Capabilities} name <code>jbd.ajaxignoreurls</code> alternately configures this setting. The expressions must be separated by tab (\t).</li>
+     * </ul><p>
+     *
+     * @param regexes
+     * @return this Builder
+     * @see #ajaxIgnoreHosts(String...)
+     * @see #ajaxIgnoreContentTypes(String...)
+     */
+    public Builder ajaxIgnoreUrls(String... regexes) {
+      this.ajaxIgnoreUrls = regexes;
+      return this;
+    }
+
+    /**
+     * Hosts whose requests don't count as pending when deciding whether a page has finished loading.
+     * Subdomains of the hosts are excluded too. E.g.,
+     * <p>
+     * <code>
+     * .ajaxIgnoreHosts("google-analytics.com", "doubleclick.net")
+     * </code>
+     * <p>
+     * By default no hosts are excluded.
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.ajaxignorehosts</code> overrides this setting. The hosts must be separated by tab (\t).</li>
+     * <li>{@link Capabilities} name <code>jbd.ajaxignorehosts</code> alternately configures this setting. The hosts must be separated by tab (\t).</li>
+     * </ul><p>
+     *
+     * @param hosts
+     * @return this Builder
+     * @see #ajaxIgnoreUrls(String...)
+     */
+    public Builder ajaxIgnoreHosts(String... hosts) {
+      this.ajaxIgnoreHosts = hosts;
+      return this;
+    }
+
+    /**
+     * Content types whose requests don't count as pending once their response arrives, when deciding
+     * whether a page has finished loading. A content type matches if it starts with one of the strings,
+     * ignoring case. E.g.,
+     * <p>
+     * <code>
+     * .ajaxIgnoreContentTypes("text/event-stream", "image/")
+     * </code>
+     * <p>
+     * By default no content types are excluded.
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.ajaxignorecontenttypes</code> overrides this setting. The content types must be separated by tab (\t).</li>
+     * <li>{@link Capabilities} name <code>jbd.ajaxignorecontenttypes</code> alternately configures this setting. The content types must be separated by tab (\t).</li>
+     * </ul><p>
+     *
+     * @param contentTypes
+     * @return this Builder
+     * @see #ajaxIgnoreUrls(String...)
+     */
+    public Builder ajaxIgnoreContentTypes(String... contentTypes) {
+      this.ajaxIgnoreContentTypes = contentTypes;
+      return this;
+    }
+
+    /**
+     * How long navigation, form submissions, clicks, and keyboard entry wait for the page to load.
+     * With {@link PageLoadStrategy#EAGER} or {@link PageLoadStrategy#NONE}, work on the page
+     * can overlap with the loading of its subresources.
+     * <p>
+     * Can also be chosen for a single navigation with {@link JBrowserDriver#get(String, PageLoadStrategy)}.
+     * <p>
+     * Defaults to {@link PageLoadStrategy#NORMAL}.
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.pageloadstrategy</code> overrides this setting. Use <code>normal</code>, <code>eager</code>, or <code>none</code> as the value.</li>
+     * <li>{@link Capabilities} name <code>jbd.pageloadstrategy</code> alternately configures this setting. Use <code>normal</code>, <code>eager</code>, or <code>none</code> as the value.</li>
+     * </ul><p>
+     *
+     * @param pageLoadStrategy
+     * @return this Builder
+     */
+    public Builder pageLoadStrategy(PageLoadStrategy pageLoadStrategy) {
+      this.pageLoadStrategy = pageLoadStrategy;
+      return this;
+    }
+
+    /**
+     * Skip painting web pages unless a screenshot is taken, for browsers which only read
+     * the DOM. Layout and JavaScript still run as usual.
+     * <p>
+     * In headless mode, the screen of the browser process isn't composed either, so this setting
+     * applies to every browser sharing the process (see {@link #processSessions(int)}).
+     * <p>
+     * Defaults to <code>false</code>.
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.renderondemand</code> overrides this setting.</li>
+     * <li>{@link Capabilities} name <code>jbd.renderondemand</code> alternately configures this setting.</li>
+     * </ul><p>
+     *
+     * @param renderOnDemand
+     * @return this Builder
+     */
+    public Builder renderOnDemand(boolean renderOnDemand) {
+      this.renderOnDemand = renderOnDemand;
+      return this;
+    }
+
+    /**
+     * Set maximum size of the web cache entries kept in memory by each browser process, in front of the
+     * cache on disk. The browsers of a process which use the same {@link #cacheDir(File)} share this memory,
+     * and it's kept when a browser is reset. Entries which are looked up repeatedly are favored over entries used once.
+     * Lookups of entries known not to be on disk are also answered from memory.
+     * <p>
+     * If a {@link #cacheDir(File)} is set, it may be shared with other processes, so entries are only kept
+     * in memory when {@link #cacheSegments(boolean)} is also set, which lets each lookup check whether other
+     * processes have since stored or removed the entry.
+     * <p>
+     * Defaults to 10 MB. Zero disables the memory cache.
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.cachememory</code> overrides this setting.</li>
+     * <li>{@link Capabilities} name <code>jbd.cachememory</code> alternately configures this setting.</li>
+     * </ul><p>
+     *
+     * @param bytes
+     * @return this Builder
+     */
+    public Builder cacheMemory(long bytes) {
+      this.cacheMemory = bytes;
+      return this;
+    }
+
+    /**
+     * Whether to store the web cache in a few large segment files appended to, instead of a file per entry.
+     * Superseded entries are compacted in the background, and entries are read through memory mapping.
+     * <p>
+     * A {@link #cacheDir(File)} in this format can be shared by all browser processes, so that a resource
+     * is cached once for all of them. One process at a time writes the segments, and the others pass it
+     * the entries they store, which they see right away and other processes see within a fraction of a second.
+     * <p>
+     * Defaults to <code>false</code>.
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.cachesegments</code> overrides this setting.</li>
+     * <li>{@link Capabilities} name <code>jbd.cachesegments</code> alternately configures this setting.</li>
+     * </ul><p>
+     *
+     * @param cacheSegments
+     * @return this Builder
+     */
+    public Builder cacheSegments(boolean cacheSegments) {
+      this.cacheSegments = cacheSegments;
+      return this;
+    }
+
+    /**
+     * Policy deciding which web cache entries are kept in memory (see {@link #cacheMemory(long)}),
+     * such as {@link CachePolicy#SIZE_AWARE_LFU} or a {@link CachePolicy} weighting content types.
+     * How well the cache is working can be seen in {@link JBrowserDriver#cacheStats()}.
+     * <p>
+     * Defaults to {@link CachePolicy#SEGMENTED_LRU}.
+     *
+     * <p><ul>
+     * <li>Java system property <code>jbd.cachepolicy</code> overrides this setting. The value must be one of: segmentedlru, sizeawarelfu.</li>
+     * <li>{@link Capabilities} name <code>jbd.cachepolicy</code> alternately configures this setting. The value must be one of: segmentedlru, sizeawarelfu.</li>
+     * </ul><p>
+     *
+     * @param cachePolicy
+     * @return this Builder
+     */
+    public Builder cachePolicy(CachePolicy cachePolicy) {
+      this.cachePolicy = cachePolicy;
+      return this;
+    }
+
     /**
      * User data/local storage directory used by the browser. Callers may provide their own directory to share user data
      * across instances or to prevent the user data from being automatically deleted after resets or quits.
@@ -1252,6 +1642,27 @@ public class Settings implements Serializable {
       set(capabilities, PropertyName.JAVA_OPTIONS, StringUtils.join(this.javaOptions, "\t"));
       set(capabilities, PropertyName.JAVA_BINARY, this.javaBinary);
       set(capabilities, PropertyName.JAVA_EXPORT_MODULES, this.javaExportModules);
+      set(capabilities, PropertyName.BINARY_PROTOCOL, this.binaryProtocol);
+      set(capabilities, PropertyName.UNIX_SOCKET, this.unixSocket);
+      set(capabilities, PropertyName.POOL_MIN, this.poolMin);
+      set(capabilities, PropertyName.POOL_MAX, this.poolMax);
+      set(capabilities, PropertyName.POOL_INIT, this.poolInit);
+      set(capabilities, PropertyName.PROCESS_SESSIONS, this.processSessions);
+      set(capabilities, PropertyName.CLASS_DATA_SHARING, this.classDataSharing);
+      set(capabilities, PropertyName.AJAX_IGNORE_URLS, StringUtils.join(this.ajaxIgnoreUrls, "\t"));
+      set(capabilities, PropertyName.AJAX_IGNORE_HOSTS, StringUtils.join(this.ajaxIgnoreHosts, "\t"));
+      set(capabilities, PropertyName.AJAX_IGNORE_CONTENT_TYPES, StringUtils.join(this.ajaxIgnoreContentTypes, "\t"));
+      if (this.pageLoadStrategy != null) {
+        set(capabilities, PropertyName.PAGE_LOAD_STRATEGY, this.pageLoadStrategy.toString());
+      }
+      set(capabilities, PropertyName.RENDER_ON_DEMAND, this.renderOnDemand);
+      set(capabilities, PropertyName.CACHE_MEMORY, this.cacheMemory);
+      set(capabilities, PropertyName.CACHE_SEGMENTS, this.cacheSegments);
+      if (CachePolicy.SEGMENTED_LRU.equals(this.cachePolicy)) {
+        set(capabilities, PropertyName.CACHE_POLICY, "segmentedlru");
+      } else if (CachePolicy.SIZE_AWARE_LFU.equals(this.cachePolicy)) {
+        set(capabilities, PropertyName.CACHE_POLICY, "sizeawarelfu");
+      }
 
       if (this.screen != null) {
         set(capabilities, PropertyName.SCREEN_WIDTH, this.screen.getWidth());
@@ -1262,6 +1673,10 @@ public class Settings implements Serializable {
         set(capabilities, PropertyName.CACHE_DIR, this.cacheDir.getAbsolutePath());
       }
 
+      if (this.classpathCacheDir != null) {
+        set(capabilities, PropertyName.CLASSPATH_CACHE_DIR, this.classpathCacheDir.getAbsolutePath());
+      }
+
       if (this.userDataDirectory != null) {
         capabilities.setCapability(PropertyName.USER_DATA_DIRECTORY.propertyName, this.userDataDirectory.getAbsolutePath());
       }
@@ -1402,6 +1817,21 @@ public class Settings implements Serializable {
     return fallback;
   }
 
+  private static List<String> parse(Map capabilities, PropertyName name, String[] fallback) {
+    List<String> list = new ArrayList<String>();
+    if (capabilities.get(name.propertyName) != null) {
+      list.addAll(Arrays.asList(capabilities.get(name.propertyName).toString().split("\t")));
+    } else if (fallback != null) {
+      list.addAll(Arrays.asList(fallback));
+    }
+    for (Iterator<String> it = list.iterator(); it.hasNext();) {
+      if (StringUtils.isEmpty(it.next())) {
+        it.remove();
+      }
+    }
+    return list;
+  }
+
   private static File parse(Map capabilities, PropertyName name, File fallback) {
     if (capabilities.containsKey(name.propertyName)) {
       Object pathName = capabilities.get(name.propertyName);
@@ -1455,6 +1885,22 @@ public class Settings implements Serializable {
   private final boolean customClasspath;
   private final String javaBinary;
   private final boolean javaExportModules;
+  private final boolean binaryProtocol;
+  private final boolean unixSocket;
+  private final int poolMin;
+  private final int poolMax;
+  private final boolean poolInit;
+  private final int processSessions;
+  private final File classpathCacheDir;
+  private final boolean classDataSharing;
+  private final List<Pattern> ajaxIgnoreUrls;
+  private final List<String> ajaxIgnoreHosts;
+  private final List<String> ajaxIgnoreContentTypes;
+  private final PageLoadStrategy pageLoadStrategy;
+  private final boolean renderOnDemand;
+  private final long cacheMemory;
+  private final boolean cacheSegments;
+  private final CachePolicy cachePolicy;
   private final File userDataDirectory;
   private final String csrfRequestToken;
   private final String csrfResponseToken;
@@ -1489,6 +1935,38 @@ public class Settings implements Serializable {
     this.customClasspath = this.javaOptions.contains("-classpath") || this.javaOptions.contains("-cp");
     this.javaBinary = parse(properties, PropertyName.JAVA_BINARY, builder.javaBinary);
     this.javaExportModules = parse(properties, PropertyName.JAVA_EXPORT_MODULES, builder.javaExportModules);
+    this.binaryProtocol = parse(properties, PropertyName.BINARY_PROTOCOL, builder.binaryProtocol);
+    this.poolMin = parse(properties, PropertyName.POOL_MIN, builder.poolMin);
+    this.poolMax = parse(properties, PropertyName.POOL_MAX, builder.poolMax);
+    this.poolInit = parse(properties, PropertyName.POOL_INIT, builder.poolInit);
+    this.processSessions = parse(properties, PropertyName.PROCESS_SESSIONS, builder.processSessions);
+    this.classpathCacheDir = parse(properties, PropertyName.CLASSPATH_CACHE_DIR, builder.classpathCacheDir);
+    this.classDataSharing = parse(properties, PropertyName.CLASS_DATA_SHARING, builder.classDataSharing);
+    List<Pattern> ajaxIgnoreUrlsTmp = new ArrayList<Pattern>();
+    for (String regex : parse(properties, PropertyName.AJAX_IGNORE_URLS, builder.ajaxIgnoreUrls)) {
+      ajaxIgnoreUrlsTmp.add(Pattern.compile(regex));
+    }
+    this.ajaxIgnoreUrls = Collections.unmodifiableList(ajaxIgnoreUrlsTmp);
+    List<String> ajaxIgnoreHostsTmp = new ArrayList<String>();
+    for (String host : parse(properties, PropertyName.AJAX_IGNORE_HOSTS, builder.ajaxIgnoreHosts)) {
+      ajaxIgnoreHostsTmp.add(host.toLowerCase());
+    }
+    this.ajaxIgnoreHosts = Collections.unmodifiableList(ajaxIgnoreHostsTmp);
+    List<String> ajaxIgnoreContentTypesTmp = new ArrayList<String>();
+    for (String contentType : parse(properties, PropertyName.AJAX_IGNORE_CONTENT_TYPES, builder.ajaxIgnoreContentTypes)) {
+      ajaxIgnoreContentTypesTmp.add(contentType.toLowerCase());
+    }
+    this.ajaxIgnoreContentTypes = Collections.unmodifiableList(ajaxIgnoreContentTypesTmp);
+    PageLoadStrategy pageLoadStrategyTmp = PageLoadStrategy.parse(
+        parse(properties, PropertyName.PAGE_LOAD_STRATEGY, (String) null));
+    pageLoadStrategyTmp = pageLoadStrategyTmp == null ? builder.pageLoadStrategy : pageLoadStrategyTmp;
+    this.pageLoadStrategy = pageLoadStrategyTmp == null ? PageLoadStrategy.NORMAL : pageLoadStrategyTmp;
+    this.renderOnDemand = parse(properties, PropertyName.RENDER_ON_DEMAND, builder.renderOnDemand);
+    this.cacheMemory = parse(properties, PropertyName.CACHE_MEMORY, builder.cacheMemory);
+    this.cacheSegments = parse(properties, PropertyName.CACHE_SEGMENTS, builder.cacheSegments);
+    CachePolicy cachePolicyTmp = CachePolicy.parse(parse(properties, PropertyName.CACHE_POLICY, (String) null));
+    cachePolicyTmp = cachePolicyTmp == null ? builder.cachePolicy : cachePolicyTmp;
+    this.cachePolicy = cachePolicyTmp == null ? CachePolicy.SEGMENTED_LRU : cachePolicyTmp;
     if (properties.get(PropertyName.WIRE_CONSOLE.propertyName) != null) {
       System.err.println("jBrowserDriver: The jbd.wireconsole setting is deprecated and will be removed in v2.0.0. Use jbd.logwire, jbd.logger, or jbd.logsmax instead.");
       this.logWire = parse(properties, PropertyName.WIRE_CONSOLE, builder.logWire);
@@ -1559,8 +2037,17 @@ public class Settings implements Serializable {
     } else {
       processesTmp = Integer.parseInt(properties.get(PropertyName.PROCESSES.propertyName).toString());
     }
+    boolean unixSocketTmp = parse(properties, PropertyName.UNIX_SOCKET, builder.unixSocket);
+    if (unixSocketTmp && !UnixSockets.supported()) {
+      System.err.println("jBrowserDriver: The unixSocket setting requires Java 16 or later. Using TCP instead.");
+      unixSocketTmp = false;
+    }
+    this.unixSocket = unixSocketTmp;
     if (portRangesTmp == null) {
       this.portGroups = parsePorts(processesTmp);
+    } else if (unixSocket) {
+      //ports aren't used over unix domain sockets, so only the number of processes matters
+      this.portGroups = parsePorts(parsePorts(portRangesTmp).size());
     } else {
       this.portGroups = parsePorts(portRangesTmp);
     }
@@ -1807,6 +2294,94 @@ public class Settings implements Serializable {
     return javaExportModules;
   }
 
+  boolean binaryProtocol() {
+    return binaryProtocol;
+  }
+
+  boolean unixSocket() {
+    return unixSocket;
+  }
+
+  int poolMin() {
+    return poolMin;
+  }
+
+  int poolMax() {
+    return poolMax;
+  }
+
+  boolean poolInit() {
+    return poolInit;
+  }
+
+  int processSessions() {
+    return processSessions;
+  }
+
+  File classpathCacheDir() {
+    return classpathCacheDir;
+  }
+
+  boolean classDataSharing() {
+    return classDataSharing;
+  }
+
+  PageLoadStrategy pageLoadStrategy() {
+    return pageLoadStrategy;
+  }
+
+  boolean renderOnDemand() {
+    return renderOnDemand;
+  }
+
+  long cacheMemory() {
+    return cacheMemory;
+  }
+
+  boolean cacheSegments() {
+    return cacheSegments;
+  }
+
+  CachePolicy cachePolicy() {
+    return cachePolicy;
+  }
+
+  /**
+   * @param contentType
+   *          Content type of the response, or <code>null</code> if it hasn't arrived
+   * @return Whether the request doesn't count as pending when deciding whether a page has finished loading
+   */
+  boolean ajaxIgnored(String url, String contentType) {
+    for (Pattern pattern : ajaxIgnoreUrls) {
+      if (pattern.matcher(url).find()) {
+        return true;
+      }
+    }
+    if (!ajaxIgnoreHosts.isEmpty()) {
+      String host = null;
+      try {
+        host = new URI(url).getHost();
+      } catch (URISyntaxException e) {}
+      if (host != null) {
+        host = host.toLowerCase();
+        for (String ignored : ajaxIgnoreHosts) {
+          if (host.equals(ignored) || host.endsWith("." + ignored)) {
+            return true;
+          }
+        }
+      }
+    }
+    if (contentType != null && !ajaxIgnoreContentTypes.isEmpty()) {
+      String contentTypeLower = contentType.toLowerCase();
+      for (String ignored : ajaxIgnoreContentTypes) {
+        if (contentTypeLower.startsWith(ignored)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   File userDataDirectory() {
     return userDataDirectory;
   }
@@ -29,7 +29,6 @@ import javafx.scene.web.WebView;
 import javafx.stage.Stage;
 
 class SettingsManager {
-  private static final AtomicReference<Settings> settings = new AtomicReference<Settings>();
   private static final AtomicBoolean platformInitialized = new AtomicBoolean();
   private static final AtomicBoolean monocle = new AtomicBoolean();
 
@@ -40,16 +39,12 @@ class SettingsManager {
     return monocle.get();
   }
 
-  static Settings settings() {
-    return settings.get();
-  }
-
+  /**
+   * Initializes the platform for the first session's settings. Settings of individual sessions
+   * are registered with {@link Session#register(Settings)}.
+   */
   static void register(final Settings settings) {
-    SettingsManager.settings.set(settings);
     if (settings != null) {
-      LogsServer.updateSettings();
-      StreamConnection.updateSettings();
-
       if (settings.headless() && platformInitialized.compareAndSet(false, true)) {
         monocle.set(true);
         System.setProperty("quantum.multithreaded", "false");
@@ -69,6 +64,9 @@ class SettingsManager {
         System.setProperty("prism.order", "sw");
         System.setProperty("prism.allowhidpi", "false");
         System.setProperty("prism.text", "t2k");
+        if (settings.renderOnDemand()) {
+          System.setProperty("headless.compose", "false");
+        }
         try {
           Class<?> platformFactory = Class.forName("com.sun.glass.ui.PlatformFactory");
           Field field = platformFactory.getDeclaredField("instance");
@@ -87,42 +85,48 @@ class SettingsManager {
 
   @SuppressWarnings("deprecation") //App class is for internal use only; it's not actually deprecated
   static void register(
+      final Settings settings,
       final AtomicReference<Stage> stage,
       final AtomicReference<WebView> view) {
-    ProxyAuth.add(settings.get().proxy());
-    if (isMonocle() &&
-        com.sun.glass.ui.Application.GetApplication() == null) {
-      new Thread(new Runnable() {
-        @Override
-        public void run() {
-          try {
-            Application.launch(App.class,
-                new String[] {
-                    Integer.toString(settings.get().screenWidth()),
-                    Integer.toString(settings.get().screenHeight()),
-                    Boolean.toString(isMonocle()) });
-          } catch (Throwable t) {
-            LogsServer.instance().exception(t);
-          }
-        }
-      }).start();
-    } else {
-      final App app = new App();
-      app.init(
-          settings.get().screenWidth(), settings.get().screenHeight(),
-          isMonocle());
-      AppThread.exec(new Sync<Object>() {
-        public Object perform() {
-          try {
-            app.start();
-          } catch (Throwable t) {
-            LogsServer.instance().exception(t);
+    ProxyAuth.add(settings.proxy());
+    synchronized (platformInitialized) {
+      //sessions sharing the process must not launch the application more than once
+      if (isMonocle() &&
+          com.sun.glass.ui.Application.GetApplication() == null) {
+        new Thread(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              Application.launch(App.class,
+                  new String[] {
+                      Integer.toString(settings.screenWidth()),
+                      Integer.toString(settings.screenHeight()),
+                      Boolean.toString(isMonocle()) });
+            } catch (Throwable t) {
+              LogsServer.instance().exception(t);
+            }
           }
-          return null;
-        }
-      });
+        }).start();
+        stage.set(App.getStage());
+        view.set(App.getView());
+        return;
+      }
     }
-    stage.set(App.getStage());
-    view.set(App.getView());
+    final App app = new App();
+    app.init(
+        settings.screenWidth(), settings.screenHeight(),
+        isMonocle());
+    AppThread.exec(new Sync<Object>() {
+      public Object perform() {
+        try {
+          app.start();
+        } catch (Throwable t) {
+          LogsServer.instance().exception(t);
+        }
+        return null;
+      }
+    });
+    stage.set(app.stage() == null ? App.getStage() : app.stage());
+    view.set(app.view() == null ? App.getView() : app.view());
   }
 }
@@ -0,0 +1,114 @@
+/*
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2016 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A browser process hosting several browser sessions, kept per {@link Settings} object.
+ * <p>
+ * Browsers attach to a process with a free session until it hosts {@link Settings#processSessions()}
+ * of them, and the process ends once its last session ends.
+ */
+class SharedProcess {
+  private static final Map<Settings, List<SharedProcess>> processes = new IdentityHashMap<Settings, List<SharedProcess>>();
+  private final Settings settings;
+  private final JBrowserDriver owner;
+  private int sessions = 1;
+
+  private SharedProcess(Settings settings, JBrowserDriver owner) {
+    this.settings = settings;
+    this.owner = owner;
+  }
+
+  /**
+   * Makes a newly launched process available for other browsers to attach to.
+   *
+   * @param owner
+   *          The browser which launched the process, which counts as its first session
+   * @return The shared process, or <code>null</code> if processes aren't shared
+   */
+  static SharedProcess register(Settings settings, JBrowserDriver owner) {
+    if (settings.processSessions() <= 1) {
+      return null;
+    }
+    SharedProcess process = new SharedProcess(settings, owner);
+    synchronized (processes) {
+      List<SharedProcess> list = processes.get(settings);
+      if (list == null) {
+        list = new LinkedList<SharedProcess>();
+        processes.put(settings, list);
+      }
+      list.add(process);
+    }
+    return process;
+  }
+
+  /**
+   * @return A process with a free session, which is now reserved for the caller,
+   *         or <code>null</code> if there's none
+   */
+  static SharedProcess attach(Settings settings) {
+    if (settings.processSessions() <= 1) {
+      return null;
+    }
+    synchronized (processes) {
+      List<SharedProcess> list = processes.get(settings);
+      if (list != null) {
+        for (SharedProcess process : list) {
+          if (process.sessions < settings.processSessions() && process.owner.isAlive()) {
+            ++process.sessions;
+            return process;
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return The browser which launched the process, whose process state the other sessions share
+   */
+  JBrowserDriver owner() {
+    return owner;
+  }
+
+  /**
+   * Ends one session of the process.
+   *
+   * @return Whether it was the last session, so that the process should end too
+   */
+  boolean release() {
+    synchronized (processes) {
+      if (--sessions > 0) {
+        return false;
+      }
+      List<SharedProcess> list = processes.get(settings);
+      if (list != null) {
+        list.remove(this);
+        if (list.isEmpty()) {
+          processes.remove(settings);
+        }
+      }
+      return true;
+    }
+  }
+}
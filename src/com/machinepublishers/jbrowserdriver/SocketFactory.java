@@ -17,27 +17,34 @@
  */
 package com.machinepublishers.jbrowserdriver;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.net.InetAddress;
-import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.rmi.server.RMISocketFactory;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 class SocketFactory extends RMISocketFactory implements Serializable {
+  private static final int CONNECT_RETRIES = 15;
   private final InetAddress host;
   private final int childPort;
   private final int parentPort;
-  private final int parentAltPort;
-  private final Set<SocketLock> locks;
-  private transient final AtomicReference<Socket> clientSocket = new AtomicReference<Socket>(new Socket());
-  private transient final AtomicReference<Socket> clientAltSocket = new AtomicReference<Socket>(new Socket());
+  private final File socketFile;
+  private transient final AtomicReference<SocketMultiplexer> multiplexer = new AtomicReference<SocketMultiplexer>();
+  private transient final AtomicBoolean connected = new AtomicBoolean();
+  private transient final AtomicReference<SocketMultiplexer.Handler> commandHandler = new AtomicReference<SocketMultiplexer.Handler>();
 
-  SocketFactory(String host, PortGroup ports, final Set<SocketLock> locks) {
+  /**
+   * @param host
+   * @param ports
+   * @param socketFile
+   *          Unix domain socket to use instead of TCP, or <code>null</code>
+   */
+  SocketFactory(String host, PortGroup ports, File socketFile) {
     InetAddress hostTmp = null;
     try {
       hostTmp = InetAddress.getByName(host);
@@ -47,16 +54,14 @@ class SocketFactory extends RMISocketFactory implements Serializable {
     this.host = hostTmp;
     this.childPort = (int) ports.child;
     this.parentPort = (int) ports.parent;
-    this.parentAltPort = (int) ports.parentAlt;
-    this.locks = locks;
+    this.socketFile = socketFile;
   }
 
   private SocketFactory(SocketFactory other) {
     this.host = other.host;
     this.childPort = other.childPort;
     this.parentPort = other.parentPort;
-    this.parentAltPort = other.parentAltPort;
-    this.locks = other.locks;
+    this.socketFile = other.socketFile;
   }
 
   private Object readResolve() {
@@ -65,60 +70,58 @@ class SocketFactory extends RMISocketFactory implements Serializable {
 
   @Override
   public ServerSocket createServerSocket(int p) throws IOException {
-    ServerSocket serverSocket = new ServerSocket();
-    serverSocket.setReuseAddress(true);
-    serverSocket.bind(new InetSocketAddress(host, childPort), Integer.MAX_VALUE);
-    return serverSocket;
+    if (socketFile != null) {
+      return new SocketMultiplexer.Acceptor(socketFile, childPort, commandHandler);
+    }
+    return new SocketMultiplexer.Acceptor(host, childPort, commandHandler);
   }
 
   @Override
   public Socket createSocket(String h, int p) throws IOException {
-    if (holdsLock()) {
-      return createSocket(clientSocket, parentPort, childPort, false);
-    }
-    return createSocket(clientAltSocket, parentAltPort, childPort, true);
+    return open(SocketMultiplexer.RMI_STREAM, null);
+  }
+
+  /**
+   * Opens a stream for the binary command protocol, sharing the connection used by RMI.
+   */
+  Socket createCommandSocket() throws IOException {
+    return open(SocketMultiplexer.COMMAND_STREAM, null);
+  }
+
+  /**
+   * Opens a stream for asynchronous commands, whose responses are pushed to the receiver as they arrive.
+   */
+  Socket createAsyncSocket(SocketMultiplexer.Receiver receiver) throws IOException {
+    return open(SocketMultiplexer.ASYNC_STREAM, receiver);
+  }
+
+  /**
+   * Sets the handler for command streams accepted by the browser process.
+   */
+  void commandHandler(SocketMultiplexer.Handler handler) {
+    commandHandler.set(handler);
   }
 
-  private boolean holdsLock() {
-    synchronized (locks) {
-      for (SocketLock lock : locks) {
-        if (Thread.holdsLock(lock)) {
-          return true;
-        }
+  private Socket open(byte kind, SocketMultiplexer.Receiver receiver) throws IOException {
+    synchronized (multiplexer) {
+      if (multiplexer.get() == null || multiplexer.get().isClosed()) {
+        //only wait on the child to come up the first time; afterwards a lost connection means the child is gone
+        int retries = connected.get() ? 1 : CONNECT_RETRIES;
+        multiplexer.set(socketFile == null
+            ? SocketMultiplexer.connect(host, parentPort, childPort, retries)
+            : SocketMultiplexer.connect(socketFile, retries));
+        connected.set(true);
       }
+      return multiplexer.get().open(kind, receiver);
     }
-    return false;
   }
 
-  private Socket createSocket(AtomicReference<Socket> socket,
-      int localPort, int foreignPort, boolean background) throws IOException {
-    final int retries = 15;
-    for (int i = 1, sleep = 2; i <= retries; i++, sleep *= 2) {
-      try {
-        if (!background) {
-          Util.close(socket.get());
-        }
-        socket.set(new Socket());
-        socket.get().setReuseAddress(true);
-        socket.get().setTcpNoDelay(true);
-        socket.get().setKeepAlive(true);
-        socket.get().bind(new InetSocketAddress(host, localPort));
-        socket.get().connect(new InetSocketAddress(host, foreignPort));
-        return socket.get();
-      } catch (IOException e) {
-        try {
-          if (background || i == retries) {
-            throw e;
-          }
-          try {
-            Thread.sleep(sleep);
-          } catch (InterruptedException e2) {}
-        } finally {
-          Util.close(socket.get());
-        }
+  void close() {
+    synchronized (multiplexer) {
+      if (multiplexer.get() != null) {
+        multiplexer.get().close();
       }
     }
-    throw new IOException();
   }
 
   @Override
@@ -0,0 +1,678 @@
+/*
+ * jBrowserDriver (TM)
+ * Copyright (C) 2017 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Carries many logical RMI connections over one long-lived TCP connection.
+ * <p>
+ * Each logical connection is a {@link Stream} identified by a request id. Frames on the wire
+ * are <code>[int streamId][byte type][int length][payload]</code>.
+ * <p>
+ * Each side may send up to {@link #WINDOW} bytes on a stream beyond what the other side has read,
+ * plus the rest of the write in progress, and writers then block until the reader grants more in a
+ * <code>GRANT</code> frame. So a stream whose data isn't being read can't fill the other side's memory,
+ * and the connection's reader thread never blocks on one stream. Streams whose data is pushed to a
+ * {@link Receiver} are consumed as it arrives, so they're opened without a limit.
+ */
+class SocketMultiplexer {
+  private static final byte OPEN = 1;
+  private static final byte DATA = 2;
+  private static final byte CLOSE = 3;
+  private static final byte GRANT = 4;
+  private static final int WINDOW = 1024 * 1024;
+  static final byte RMI_STREAM = 0;
+  static final byte COMMAND_STREAM = 1;
+  static final byte ASYNC_STREAM = 2;
+  private static final long MAX_ACCEPT_BACKOFF = 1000;
+
+  private final Closeable connection;
+  private final Socket socket;
+  private final DataOutputStream out;
+  private final DataInputStream in;
+  private final Acceptor acceptor;
+  private final Map<Integer, Stream> streams = new HashMap<Integer, Stream>();
+  private final AtomicInteger requestIds = new AtomicInteger();
+  private final AtomicBoolean closed = new AtomicBoolean();
+
+  private SocketMultiplexer(Socket socket, Acceptor acceptor) throws IOException {
+    this(socket, socket, socket.getInputStream(), socket.getOutputStream(), acceptor);
+  }
+
+  private SocketMultiplexer(SocketChannel channel, Acceptor acceptor) {
+    this(channel, null, UnixSockets.inputStream(channel), UnixSockets.outputStream(channel), acceptor);
+  }
+
+  private SocketMultiplexer(Closeable connection, Socket socket,
+      InputStream in, OutputStream out, Acceptor acceptor) {
+    this.connection = connection;
+    this.socket = socket;
+    this.acceptor = acceptor;
+    this.out = new DataOutputStream(new BufferedOutputStream(out));
+    this.in = new DataInputStream(new BufferedInputStream(in));
+    Thread reader = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        read();
+      }
+    });
+    reader.setDaemon(true);
+    reader.setName("jBrowserDriver socket multiplexer");
+    reader.start();
+  }
+
+  /**
+   * Connects to the child process, retrying while it finishes binding its port.
+   */
+  static SocketMultiplexer connect(InetAddress host, int localPort, int foreignPort, int retries)
+      throws IOException {
+    for (int i = 1, sleep = 2;; i++, sleep *= 2) {
+      Socket socket = new Socket();
+      try {
+        socket.setReuseAddress(true);
+        socket.setTcpNoDelay(true);
+        socket.setKeepAlive(true);
+        socket.bind(new InetSocketAddress(host, localPort));
+        socket.connect(new InetSocketAddress(host, foreignPort));
+        return new SocketMultiplexer(socket, null);
+      } catch (IOException e) {
+        Util.close(socket);
+        if (i >= retries) {
+          throw e;
+        }
+        try {
+          Thread.sleep(sleep);
+        } catch (InterruptedException e2) {}
+      }
+    }
+  }
+
+  /**
+   * Connects to the child process over a Unix domain socket, retrying while it finishes binding.
+   */
+  static SocketMultiplexer connect(File file, int retries) throws IOException {
+    for (int i = 1, sleep = 2;; i++, sleep *= 2) {
+      try {
+        return new SocketMultiplexer(UnixSockets.connect(file), null);
+      } catch (IOException e) {
+        if (i >= retries) {
+          throw e;
+        }
+        try {
+          Thread.sleep(sleep);
+        } catch (InterruptedException e2) {}
+      }
+    }
+  }
+
+  boolean isClosed() {
+    return closed.get();
+  }
+
+  /**
+   * Handles logical connections which carry something other than RMI.
+   */
+  interface Handler {
+    void handle(Socket socket, byte kind);
+  }
+
+  /**
+   * Consumes a logical connection's data as it arrives, on the connection's reader thread.
+   * Each call receives the bytes of exactly one write made by the other side.
+   */
+  interface Receiver {
+    void receive(byte[] message);
+
+    void closed();
+  }
+
+  /**
+   * Opens a new logical connection to the other side.
+   */
+  Socket open(byte kind) throws IOException {
+    return open(kind, null);
+  }
+
+  /**
+   * Opens a new logical connection whose incoming data is pushed to the receiver instead of being read
+   * from the socket's input stream.
+   */
+  Socket open(byte kind, Receiver receiver) throws IOException {
+    Stream stream = new Stream(this, requestIds.incrementAndGet(), receiver, WINDOW);
+    synchronized (streams) {
+      if (closed.get()) {
+        throw new SocketException("Connection to browser process is closed.");
+      }
+      streams.put(stream.id, stream);
+    }
+    write(stream.id, OPEN, new byte[] { kind, (byte) (receiver == null ? 0 : 1) }, 0, 2);
+    return stream;
+  }
+
+  private void write(int id, byte type, byte[] bytes, int offset, int len) throws IOException {
+    synchronized (out) {
+      try {
+        out.writeInt(id);
+        out.writeByte(type);
+        out.writeInt(len);
+        if (len > 0) {
+          out.write(bytes, offset, len);
+        }
+        out.flush();
+      } catch (IOException e) {
+        close();
+        throw e;
+      }
+    }
+  }
+
+  private void read() {
+    try {
+      while (true) {
+        int id = in.readInt();
+        byte type = in.readByte();
+        int len = in.readInt();
+        byte[] bytes = null;
+        if (len > 0) {
+          bytes = new byte[len];
+          in.readFully(bytes);
+        }
+        if (type == OPEN) {
+          //a receiver on the other side consumes data as it arrives
+          Stream stream = new Stream(this, id, null, bytes != null && bytes.length > 1 && bytes[1] != 0
+              ? Long.MAX_VALUE : WINDOW);
+          synchronized (streams) {
+            streams.put(id, stream);
+          }
+          Handler handler = acceptor == null ? null : acceptor.handler.get();
+          if (acceptor != null && (bytes == null || bytes[0] == RMI_STREAM)) {
+            acceptor.accepted.put(stream);
+          } else if (handler != null && (bytes[0] == COMMAND_STREAM || bytes[0] == ASYNC_STREAM)) {
+            handler.handle(stream, bytes[0]);
+          } else {
+            stream.close();
+          }
+        } else {
+          Stream stream;
+          synchronized (streams) {
+            stream = type == CLOSE ? streams.remove(id) : streams.get(id);
+          }
+          if (stream != null) {
+            if (type == DATA) {
+              stream.receive(bytes);
+            } else if (type == GRANT) {
+              stream.receiveGrant(ByteBuffer.wrap(bytes).getInt());
+            } else {
+              stream.receiveClose();
+            }
+          }
+        }
+      }
+    } catch (Throwable t) {
+      close();
+    }
+  }
+
+  void close() {
+    if (closed.compareAndSet(false, true)) {
+      Util.close(connection);
+      Stream[] toClose;
+      synchronized (streams) {
+        toClose = streams.values().toArray(new Stream[0]);
+        streams.clear();
+      }
+      for (Stream stream : toClose) {
+        stream.receiveClose();
+      }
+    }
+  }
+
+  /**
+   * A logical connection. Implements just enough of {@link Socket} for RMI's transport.
+   */
+  private static class Stream extends Socket {
+    private final SocketMultiplexer multiplexer;
+    private final int id;
+    private final Receiver receiver;
+    private final LinkedList<byte[]> received = new LinkedList<byte[]>();
+    private final InputStream streamIn = new StreamInput();
+    private final OutputStream streamOut = new StreamOutput();
+    private int position;
+    private long credit;
+    private int consumed;
+    private boolean remoteClosed;
+    private boolean localClosed;
+    private int timeout;
+
+    Stream(SocketMultiplexer multiplexer, int id, Receiver receiver, long credit) {
+      this.multiplexer = multiplexer;
+      this.id = id;
+      this.receiver = receiver;
+      this.credit = credit;
+    }
+
+    private void receive(byte[] bytes) {
+      if (bytes != null) {
+        if (receiver != null) {
+          receiver.receive(bytes);
+          return;
+        }
+        synchronized (this) {
+          received.add(bytes);
+          notifyAll();
+        }
+      }
+    }
+
+    private synchronized void receiveGrant(int bytes) {
+      credit += bytes;
+      notifyAll();
+    }
+
+    private void receiveClose() {
+      synchronized (this) {
+        remoteClosed = true;
+        notifyAll();
+      }
+      if (receiver != null) {
+        receiver.closed();
+      }
+    }
+
+    private int read(byte[] bytes, int offset, int len) throws IOException {
+      int count = take(bytes, offset, len);
+      int grant = 0;
+      synchronized (this) {
+        if (consumed >= WINDOW / 2) {
+          grant = consumed;
+          consumed = 0;
+        }
+      }
+      if (grant > 0 && !multiplexer.isClosed()) {
+        //sent without holding this stream's lock, which is taken when the connection fails during a write
+        try {
+          multiplexer.write(id, GRANT, ByteBuffer.allocate(4).putInt(grant).array(), 0, 4);
+        } catch (IOException e) {}
+      }
+      return count;
+    }
+
+    private synchronized int take(byte[] bytes, int offset, int len) throws IOException {
+      long start = System.currentTimeMillis();
+      while (received.isEmpty()) {
+        if (localClosed) {
+          throw new SocketException("Socket closed");
+        }
+        if (remoteClosed) {
+          return -1;
+        }
+        try {
+          if (timeout <= 0) {
+            wait();
+          } else {
+            long remaining = timeout - (System.currentTimeMillis() - start);
+            if (remaining <= 0) {
+              throw new SocketTimeoutException("Read timed out");
+            }
+            wait(remaining);
+          }
+        } catch (InterruptedException e) {}
+      }
+      byte[] cur = received.getFirst();
+      int count = Math.min(len, cur.length - position);
+      System.arraycopy(cur, position, bytes, offset, count);
+      position += count;
+      consumed += count;
+      if (position == cur.length) {
+        received.removeFirst();
+        position = 0;
+      }
+      return count;
+    }
+
+    private synchronized int available() {
+      int available = 0;
+      for (byte[] cur : received) {
+        available += cur.length;
+      }
+      return available - position;
+    }
+
+    private void write(byte[] bytes, int offset, int len) throws IOException {
+      synchronized (this) {
+        //a write isn't split, since a receiver on the other side gets each write as one message
+        while (credit <= 0 && !localClosed && !remoteClosed) {
+          try {
+            wait();
+          } catch (InterruptedException e) {}
+        }
+        if (localClosed || remoteClosed) {
+          throw new SocketException("Socket closed");
+        }
+        credit -= len;
+      }
+      if (len > 0) {
+        multiplexer.write(id, DATA, bytes, offset, len);
+      }
+    }
+
+    private class StreamInput extends InputStream {
+      @Override
+      public int read() throws IOException {
+        byte[] bytes = new byte[1];
+        int len = Stream.this.read(bytes, 0, 1);
+        return len == -1 ? -1 : bytes[0] & 0xff;
+      }
+
+      @Override
+      public int read(byte[] bytes, int offset, int len) throws IOException {
+        return len == 0 ? 0 : Stream.this.read(bytes, offset, len);
+      }
+
+      @Override
+      public int available() {
+        return Stream.this.available();
+      }
+
+      @Override
+      public void close() throws IOException {
+        Stream.this.close();
+      }
+    }
+
+    private class StreamOutput extends OutputStream {
+      @Override
+      public void write(int b) throws IOException {
+        Stream.this.write(new byte[] { (byte) b }, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] bytes, int offset, int len) throws IOException {
+        Stream.this.write(bytes, offset, len);
+      }
+
+      @Override
+      public void close() throws IOException {
+        Stream.this.close();
+      }
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return streamIn;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return streamOut;
+    }
+
+    @Override
+    public void close() throws IOException {
+      boolean sendClose;
+      synchronized (this) {
+        if (localClosed) {
+          return;
+        }
+        localClosed = true;
+        sendClose = !remoteClosed;
+        received.clear();
+        notifyAll();
+      }
+      synchronized (multiplexer.streams) {
+        multiplexer.streams.remove(id);
+      }
+      if (sendClose && !multiplexer.isClosed()) {
+        try {
+          multiplexer.write(id, CLOSE, null, 0, 0);
+        } catch (IOException e) {}
+      }
+    }
+
+    @Override
+    public synchronized boolean isClosed() {
+      return localClosed;
+    }
+
+    @Override
+    public boolean isConnected() {
+      return true;
+    }
+
+    @Override
+    public boolean isBound() {
+      return true;
+    }
+
+    @Override
+    public synchronized void setSoTimeout(int timeout) {
+      this.timeout = timeout;
+    }
+
+    @Override
+    public synchronized int getSoTimeout() {
+      return timeout;
+    }
+
+    @Override
+    public void setTcpNoDelay(boolean on) {}
+
+    @Override
+    public boolean getTcpNoDelay() {
+      return true;
+    }
+
+    @Override
+    public void setKeepAlive(boolean on) {}
+
+    @Override
+    public boolean getKeepAlive() {
+      return true;
+    }
+
+    @Override
+    public InetAddress getInetAddress() {
+      return multiplexer.socket == null ? InetAddress.getLoopbackAddress() : multiplexer.socket.getInetAddress();
+    }
+
+    @Override
+    public InetAddress getLocalAddress() {
+      return multiplexer.socket == null ? InetAddress.getLoopbackAddress() : multiplexer.socket.getLocalAddress();
+    }
+
+    @Override
+    public int getPort() {
+      return multiplexer.socket == null ? 0 : multiplexer.socket.getPort();
+    }
+
+    @Override
+    public int getLocalPort() {
+      return multiplexer.socket == null ? -1 : multiplexer.socket.getLocalPort();
+    }
+
+    @Override
+    public SocketAddress getRemoteSocketAddress() {
+      return multiplexer.socket == null ? null : multiplexer.socket.getRemoteSocketAddress();
+    }
+
+    @Override
+    public SocketAddress getLocalSocketAddress() {
+      return multiplexer.socket == null ? null : multiplexer.socket.getLocalSocketAddress();
+    }
+
+    @Override
+    public String toString() {
+      return new StringBuilder().append("Stream[").append(id).append("]")
+          .append(multiplexer.socket == null ? multiplexer.connection : multiplexer.socket).toString();
+    }
+  }
+
+  /**
+   * Server side of the multiplexed connection. Hands each logical connection to RMI as an accepted socket.
+   */
+  static class Acceptor extends ServerSocket {
+    private final Closeable server;
+    private final int port;
+    private final AtomicBoolean serverClosed = new AtomicBoolean();
+    private final LinkedBlockingQueue<Stream> accepted = new LinkedBlockingQueue<Stream>();
+    private final AtomicReference<Handler> handler;
+
+    Acceptor(InetAddress host, int port, AtomicReference<Handler> handler) throws IOException {
+      ServerSocket serverSocket = new ServerSocket();
+      serverSocket.setReuseAddress(true);
+      serverSocket.bind(new InetSocketAddress(host, port), Integer.MAX_VALUE);
+      this.server = serverSocket;
+      this.port = serverSocket.getLocalPort();
+      this.handler = handler;
+      listen();
+    }
+
+    /**
+     * Listens on a Unix domain socket. The port is only used to identify this endpoint to RMI.
+     */
+    Acceptor(File file, int port, AtomicReference<Handler> handler) throws IOException {
+      this.server = UnixSockets.listen(file);
+      this.port = port;
+      this.handler = handler;
+      listen();
+    }
+
+    private void listen() {
+      Thread listener = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          long backoff = 0;
+          while (!serverClosed.get()) {
+            try {
+              acceptConnection();
+              backoff = 0;
+            } catch (Throwable t) {
+              if (serverClosed.get() || !isOpen()) {
+                return;
+              }
+              //accepting can keep failing, e.g. when out of file descriptors
+              LogsServer.instance().exception(t);
+              backoff = Math.min(MAX_ACCEPT_BACKOFF, Math.max(10, backoff * 2));
+              try {
+                Thread.sleep(backoff);
+              } catch (InterruptedException e) {}
+            }
+          }
+        }
+      });
+      listener.setDaemon(true);
+      listener.setName("jBrowserDriver socket acceptor");
+      listener.start();
+    }
+
+    private boolean isOpen() {
+      return server instanceof ServerSocket
+          ? !((ServerSocket) server).isClosed() : ((ServerSocketChannel) server).isOpen();
+    }
+
+    private void acceptConnection() throws IOException {
+      if (server instanceof ServerSocket) {
+        Socket socket = ((ServerSocket) server).accept();
+        try {
+          socket.setTcpNoDelay(true);
+          socket.setKeepAlive(true);
+          new SocketMultiplexer(socket, this);
+        } catch (IOException e) {
+          Util.close(socket);
+        }
+      } else {
+        new SocketMultiplexer(((ServerSocketChannel) server).accept(), this);
+      }
+    }
+
+    @Override
+    public Socket accept() throws IOException {
+      while (true) {
+        if (serverClosed.get()) {
+          throw new SocketException("Socket is closed");
+        }
+        try {
+          Stream stream = accepted.poll(1, TimeUnit.SECONDS);
+          if (stream != null) {
+            return stream;
+          }
+        } catch (InterruptedException e) {}
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (serverClosed.compareAndSet(false, true)) {
+        server.close();
+      }
+    }
+
+    @Override
+    public boolean isClosed() {
+      return serverClosed.get();
+    }
+
+    @Override
+    public boolean isBound() {
+      return true;
+    }
+
+    @Override
+    public int getLocalPort() {
+      return port;
+    }
+
+    @Override
+    public InetAddress getInetAddress() {
+      return server instanceof ServerSocket
+          ? ((ServerSocket) server).getInetAddress() : InetAddress.getLoopbackAddress();
+    }
+
+    @Override
+    public SocketAddress getLocalSocketAddress() {
+      return server instanceof ServerSocket ? ((ServerSocket) server).getLocalSocketAddress() : null;
+    }
+  }
+}
@@ -17,17 +17,56 @@
  */
 package com.machinepublishers.jbrowserdriver;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import javafx.application.Platform;
+
 class StatusCode {
   private final AtomicInteger statusCode = new AtomicInteger(-1);
+  private final Session session;
+  private final List<Runnable> parked = new ArrayList<Runnable>();
+
+  StatusCode() {
+    this(null);
+  }
+
+  /**
+   * @param session
+   *          Session whose work is performed while waiting on this status,
+   *          or <code>null</code> for the session of the caller
+   */
+  StatusCode(Session session) {
+    this.session = session;
+  }
+
+  Session session() {
+    return session;
+  }
 
   void reset() {
-    statusCode.set(-1);
+    set(-1);
   }
 
   void set(int statusCode) {
-    this.statusCode.set(statusCode);
+    synchronized (this) {
+      this.statusCode.set(statusCode);
+      if (statusCode != 0 && !parked.isEmpty()) {
+        for (Runnable runnable : parked) {
+          Platform.runLater(runnable);
+        }
+        parked.clear();
+      }
+    }
+  }
+
+  /**
+   * Holds an action until the page is done loading, at which point it's queued on the JavaFX thread.
+   * Callers must hold this object's lock and have seen a status of <code>0</code>.
+   */
+  void park(Runnable runnable) {
+    parked.add(runnable);
   }
 
   int get() {
@@ -19,23 +19,26 @@ package com.machinepublishers.jbrowserdriver;
 
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
 
 class StatusMonitor {
-  private static final StatusMonitor instance = new StatusMonitor();
+  private final Session session;
   private final Object lock = new Object();
   private final Map<String, StreamConnection> connections = new HashMap<String, StreamConnection>();
   private final Map<String, Boolean> primaryDocuments = new HashMap<String, Boolean>();
   private final Set<String> discarded = new HashSet<String>();
   private final Map<String, String> redirects = new HashMap<String, String>();
   private final List<String> startedUrls = new ArrayList<String>();
+  private final Set<HttpListener> listeners = Collections.newSetFromMap(new WeakHashMap<HttpListener, Boolean>());
 
-  static StatusMonitor instance() {
-    return instance;
+  StatusMonitor(Session session) {
+    this.session = session;
   }
 
   private static String canonicalUrl(String url) {
@@ -97,6 +100,25 @@ class StatusMonitor {
     }
   }
 
+  /**
+   * Notifies the session's windows of a response, which arrives before WebKit reports the resource as loaded.
+   */
+  void responded(String url, String contentType) {
+    List<HttpListener> listenersCopy;
+    synchronized (listeners) {
+      listenersCopy = new ArrayList<HttpListener>(listeners);
+    }
+    for (HttpListener listener : listenersCopy) {
+      listener.responded(url, contentType);
+    }
+  }
+
+  void addListener(HttpListener listener) {
+    synchronized (listeners) {
+      listeners.add(listener);
+    }
+  }
+
   void addDiscarded(String url) {
     synchronized (lock) {
       discarded.add(canonicalUrl(url));
@@ -117,7 +139,7 @@ class StatusMonitor {
         code = conn.getResponseCode();
         code = code <= 0 ? 499 : code;
       } catch (Throwable t) {
-        LogsServer.instance().exception(t);
+        session.logs.exception(t);
       }
     }
     return code;
@@ -128,7 +150,9 @@ class StatusMonitor {
       for (StreamConnection conn : connections.values()) {
         Util.close(conn);
       }
-      StreamConnection.cleanUp();
+      if (session.client() != null) {
+        session.client().cleanUp();
+      }
       connections.clear();
       primaryDocuments.clear();
       discarded.clear();
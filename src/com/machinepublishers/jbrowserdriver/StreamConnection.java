@@ -21,7 +21,6 @@ import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -34,7 +33,6 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLDecoder;
-import java.nio.file.Files;
 import java.security.Permission;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -70,31 +68,10 @@ import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.util.EntityUtils;
 
-import com.sun.webkit.network.CookieManager;
-
 class StreamConnection extends HttpURLConnection implements Closeable {
-  private static final CookieStore cookieStore = (CookieStore) CookieManager.getDefault();
-  private static final File attachmentsDir;
-  private static final File mediaDir;
-  static {
-    File attachmentsDirTmp = null;
-    File mediaDirTmp = null;
-    try {
-      attachmentsDirTmp = Files.createTempDirectory("jbd_attachments_").toFile();
-      mediaDirTmp = Files.createTempDirectory("jbd_media_").toFile();
-      attachmentsDirTmp.deleteOnExit();
-      mediaDirTmp.deleteOnExit();
-    } catch (Throwable t) {
-      Util.handleException(t);
-    }
-    attachmentsDir = attachmentsDirTmp;
-    mediaDir = mediaDirTmp;
-  }
   private static final Set<String> ignoredHeaders = Collections.unmodifiableSet(new HashSet(Arrays.asList(new String[] {
       "cookie", "pragma", "cache-control", "content-length" })));
   private static final Pattern invalidUrlChar = Pattern.compile("[^-A-Za-z0-9._~:/?#\\[\\]@!$&'()*+,;=]");
-  private static final Set<String> adHosts = new HashSet<String>();
-  private static final AtomicReference<StreamConnectionClient> client = new AtomicReference<StreamConnectionClient>();
   private static final Set<String> mediaExtensions = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(new String[] {
       ".svg", ".gif", ".jpeg", ".jpg", ".png",
       ".ico", ".webm", ".mp4", ".ogg", ".ogv",
@@ -120,9 +97,14 @@ class StreamConnection extends HttpURLConnection implements Closeable {
   private final AtomicBoolean contentEncodingRemoved = new AtomicBoolean();
   private final AtomicLong contentLength = new AtomicLong(-1);
   private final AtomicReference<ByteArrayOutputStream> reqData = new AtomicReference<ByteArrayOutputStream>(new ByteArrayOutputStream());
+  private volatile Session session = Session.current();
 
-  static {
-    if (SettingsManager.settings().blockAds()) {
+  /**
+   * Loaded on first use, since sessions may enable ad blocking after the process starts.
+   */
+  private static class AdHosts {
+    private static final Set<String> adHosts = new HashSet<String>();
+    static {
       BufferedReader reader = null;
       try {
         reader = new BufferedReader(
@@ -138,32 +120,17 @@ class StreamConnection extends HttpURLConnection implements Closeable {
     }
   }
 
-  static void updateSettings() {
-    StreamConnectionClient prevClient = client.get();
-    if (prevClient != null) {
-      prevClient.shutDown();
-    }
-    client.set(new StreamConnectionClient());
-  }
-
-  static File cacheDir() {
-    return client.get().cacheDir();
-  }
-
-  static File attachmentsDir() {
-    return attachmentsDir;
-  }
-
-  static File mediaDir() {
-    return mediaDir;
+  Session session() {
+    return session;
   }
 
   private boolean isBlocked(String host) {
-    if (SettingsManager.settings().blockAds() && !adHosts.isEmpty()) {
+    final Set<String> adHosts = session.settings().blockAds() ? AdHosts.adHosts : null;
+    if (adHosts != null && !adHosts.isEmpty()) {
       host = host.toLowerCase();
       while (host.contains(".")) {
         if (adHosts.contains(host)) {
-          LogsServer.instance().trace("Ad blocked: " + host);
+          session.logs.trace("Ad blocked: " + host);
           host = null;
           return true;
         }
@@ -242,7 +209,7 @@ class StreamConnection extends HttpURLConnection implements Closeable {
         }
       }
     }
-    cookieStore.addCsrfHeaders(settings, req);
+    session.cookieStore.addCsrfHeaders(settings, req);
   }
 
   ///////////////////////////////////////////////////////////
@@ -256,17 +223,19 @@ class StreamConnection extends HttpURLConnection implements Closeable {
   public void connect() throws IOException {
     try {
       if (connected.compareAndSet(false, true)) {
-        if (StatusMonitor.instance().isDiscarded(urlString)) {
+        final Settings settings = session.settings();
+        if (session.statusMonitor.isDiscarded(urlString)) {
           skip.set(true);
-          LogsServer.instance().trace("Media skipped: " + urlString);
-        } else if (isBlocked(url.getHost())) {
+          session.logs.trace("Media skipped: " + urlString);
+        } else if (settings != null && isBlocked(url.getHost())) {
           skip.set(true);
-        } else if (SettingsManager.settings() != null) {
+        } else if (settings != null) {
+          session.visit(url.getHost());
           config.get()
               .setCookieSpec("custom")
-              .setSocketTimeout(SettingsManager.settings().socketTimeout())
-              .setConnectTimeout(SettingsManager.settings().connectTimeout())
-              .setConnectionRequestTimeout(SettingsManager.settings().connectionReqTimeout());
+              .setSocketTimeout(settings.socketTimeout())
+              .setConnectTimeout(settings.connectTimeout())
+              .setConnectionRequestTimeout(settings.connectionReqTimeout());
           URI uri = null;
           try {
             uri = url.toURI();
@@ -293,8 +262,8 @@ class StreamConnection extends HttpURLConnection implements Closeable {
           } else if ("TRACE".equals(method.get())) {
             req.set(new HttpTrace(uri));
           }
-          processHeaders(SettingsManager.settings(), req.get());
-          ProxyConfig proxy = SettingsManager.settings().proxy();
+          processHeaders(settings, req.get());
+          ProxyConfig proxy = settings.proxy();
           if (proxy != null && !proxy.directConnection() && !proxy.nonProxyHosts().contains(uri.getHost())) {
             config.get().setExpectContinueEnabled(proxy.expectContinue());
             InetSocketAddress proxyAddress = new InetSocketAddress(proxy.host(), proxy.port());
@@ -304,9 +273,9 @@ class StreamConnection extends HttpURLConnection implements Closeable {
               config.get().setProxy(new HttpHost(proxy.host(), proxy.port()));
             }
           }
-          context.get().setCookieStore(cookieStore);
+          context.get().setCookieStore(session.cookieStore);
           context.get().setRequestConfig(config.get().build());
-          StatusMonitor.instance().monitor(url, this);
+          session.statusMonitor.monitor(url, this);
         }
       }
     } catch (Throwable t) {
@@ -324,11 +293,19 @@ class StreamConnection extends HttpURLConnection implements Closeable {
           } else if ("PUT".equals(method.get())) {
             ((HttpPut) req.get()).setEntity(new ByteArrayEntity(reqData.get().toByteArray()));
           }
-          response.set(client.get().execute(req.get(), context.get()));
+          Session previous = Session.enter(session);
+          try {
+            response.set(session.client().execute(req.get(), context.get()));
+          } finally {
+            Session.enter(previous);
+          }
           if (response.get() != null && response.get().getEntity() != null) {
             entity.set(response.get().getEntity());
             response.get().setHeader("Cache-Control", "no-store, no-cache");
           }
+          if (response.get() != null) {
+            session.statusMonitor.responded(urlString, getContentTypeRaw());
+          }
           if (this.urlFragment != null && response.get() != null) {
             Header header = response.get().getFirstHeader("Location");
             String location = header == null ? null : header.getValue();
@@ -384,10 +361,6 @@ class StreamConnection extends HttpURLConnection implements Closeable {
     }
   }
 
-  static void cleanUp() {
-    client.get().cleanUp();
-  }
-
   /**
    * {@inheritDoc}
    */
@@ -442,7 +415,7 @@ class StreamConnection extends HttpURLConnection implements Closeable {
     try {
       String location = getHeaderField("Location");
       if (!StringUtils.isEmpty(location)) {
-        StatusMonitor.instance().addRedirect(urlString, new URL(url, location).toExternalForm());
+        session.statusMonitor.addRedirect(urlString, new URL(url, location).toExternalForm());
       }
     } catch (Throwable t) {
       //ignore
@@ -729,7 +702,7 @@ class StreamConnection extends HttpURLConnection implements Closeable {
    */
   @Override
   public boolean usingProxy() {
-    ProxyConfig proxy = SettingsManager.settings().proxy();
+    ProxyConfig proxy = session.settings().proxy();
     return proxy != null && !proxy.directConnection();
   }
 
@@ -767,12 +740,27 @@ class StreamConnection extends HttpURLConnection implements Closeable {
         ? null : reqHeaders.get(keyLowercase).get(0);
   }
 
+  /**
+   * Finds the session which made the request from the user agent set by WebKit (see {@link Session#markUserAgent(String)}).
+   */
+  private String userAgent(String keyLowercase, String value) {
+    if ("user-agent".equals(keyLowercase)) {
+      Session marked = Session.forUserAgent(value);
+      if (marked != null) {
+        session = marked;
+      }
+      return Session.unmarkUserAgent(value);
+    }
+    return value;
+  }
+
   /**
    * {@inheritDoc}
    */
   @Override
   public void setRequestProperty(String key, String value) {
     final String keyLowercase = key.toLowerCase();
+    value = userAgent(keyLowercase, value);
     if (!ignoredHeaders.contains(keyLowercase)) {
       reqHeaders.remove(keyLowercase);
       List<String> list = new ArrayList<String>();
@@ -788,6 +776,7 @@ class StreamConnection extends HttpURLConnection implements Closeable {
   @Override
   public void addRequestProperty(String key, String value) {
     final String keyLowercase = key.toLowerCase();
+    value = userAgent(keyLowercase, value);
     if (!ignoredHeaders.contains(keyLowercase)) {
       if (reqHeaders.get(keyLowercase) == null) {
         reqHeaders.put(keyLowercase, new ArrayList<String>());
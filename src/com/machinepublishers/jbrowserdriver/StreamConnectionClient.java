@@ -37,6 +37,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -49,6 +50,9 @@ import org.apache.http.HttpException;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.cache.CacheResponseStatus;
+import org.apache.http.client.cache.HttpCacheContext;
+import org.apache.http.client.cache.HttpCacheStorage;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.protocol.HttpClientContext;
@@ -79,7 +83,9 @@ class StreamConnectionClient {
   private static Pattern pemBlock = Pattern.compile(
       "-----BEGIN CERTIFICATE-----\\s*(.*?)\\s*-----END CERTIFICATE-----", Pattern.DOTALL);
 
-  private final HttpCache httpCache;
+  private final Settings settings;
+  private final HttpCacheStorage httpCache;
+  private final MemoryCache memoryCache;
   private final File cacheDir;
   private final CacheConfig cacheConfig;
   private final Registry<ConnectionSocketFactory> registry;
@@ -87,13 +93,15 @@ class StreamConnectionClient {
   private final CloseableHttpClient client;
   private final CloseableHttpClient cachingClient;
   private final FileRemover shutdownHook;
+  private final AtomicBoolean closed = new AtomicBoolean();
 
-  StreamConnectionClient() {
-    File cacheDirTmp = SettingsManager.settings().cacheDir();
+  StreamConnectionClient(Settings settings) {
+    this.settings = settings;
+    File cacheDirTmp = settings.cacheDir();
     FileRemover shutdownHookTmp = null;
     try {
       cacheDirTmp = cacheDirTmp == null ? Files.createTempDirectory("jbd_webcache_").toFile() : cacheDirTmp;
-      if (SettingsManager.settings().cacheDir() == null) {
+      if (settings.cacheDir() == null) {
         shutdownHookTmp = new FileRemover(cacheDirTmp);
         Runtime.getRuntime().addShutdownHook(shutdownHookTmp);
       } else {
@@ -104,26 +112,44 @@ class StreamConnectionClient {
     }
     shutdownHook = shutdownHookTmp;
     cacheDir = cacheDirTmp;
-    httpCache = new HttpCache(cacheDirTmp);
+    HttpCacheStorage httpCacheTmp = null;
+    if (settings.cache() && settings.cacheSegments()) {
+      try {
+        httpCacheTmp = SegmentCache.open(cacheDirTmp);
+      } catch (Throwable t) {
+        LogsServer.instance().warn("Using a file per cache entry. " + t.getMessage());
+      }
+    }
+    httpCache = httpCacheTmp == null ? new HttpCache(cacheDirTmp, settings.cacheDir() != null) : httpCacheTmp;
+    MemoryCache memoryCacheTmp = null;
+    //entries in files per entry can't be checked against other processes sharing the directory
+    if (settings.cacheMemory() > 0 && (httpCache instanceof SegmentCache || settings.cacheDir() == null)) {
+      try {
+        memoryCacheTmp = MemoryCache.open(cacheDirTmp, httpCache, settings.cacheMemory(), settings.cachePolicy());
+      } catch (Throwable t) {
+        LogsServer.instance().warn("Not caching in memory. " + t.getMessage());
+      }
+    }
+    memoryCache = memoryCacheTmp;
 
     cacheConfig = CacheConfig.custom()
         .setSharedCache(false)
-        .setMaxCacheEntries(SettingsManager.settings().cacheEntries())
-        .setMaxObjectSize(SettingsManager.settings().cacheEntrySize())
+        .setMaxCacheEntries(settings.cacheEntries())
+        .setMaxObjectSize(settings.cacheEntrySize())
         .build();
-    ConnectionSocketFactory sslSocketFactory = SettingsManager.settings()
-        .hostnameVerification() ? new SslSocketFactory(sslContext()) : new SslSocketWithoutHostnameVerificationFactory(sslContext());
+    ConnectionSocketFactory sslSocketFactory = settings.hostnameVerification()
+        ? new SslSocketFactory(sslContext(settings)) : new SslSocketWithoutHostnameVerificationFactory(sslContext(settings));
     registry = RegistryBuilder.<ConnectionSocketFactory> create()
         .register("https", sslSocketFactory)
         .register("http", new SocketFactory())
         .build();
     manager = new PoolingHttpClientConnectionManager(registry);
-    manager.setDefaultMaxPerRoute(SettingsManager.settings().maxRouteConnections());
-    manager.setMaxTotal(SettingsManager.settings().maxConnections());
+    manager.setDefaultMaxPerRoute(settings.maxRouteConnections());
+    manager.setMaxTotal(settings.maxConnections());
     client = clientBuilderHelper(HttpClientBuilder.create(), manager);
     cachingClient = clientBuilderHelper(CachingHttpClientBuilder.create()
         .setCacheConfig(cacheConfig)
-        .setHttpCacheStorage(httpCache),
+        .setHttpCacheStorage(memoryCache == null ? httpCache : memoryCache),
         manager);
   }
 
@@ -167,16 +193,28 @@ class StreamConnectionClient {
 
   void shutDown() {
     manager.shutdown();
+    if (closed.compareAndSet(false, true)) {
+      if (memoryCache != null) {
+        memoryCache.close();
+      }
+      if (httpCache instanceof SegmentCache) {
+        ((SegmentCache) httpCache).close();
+      }
+    }
   }
 
   CloseableHttpResponse execute(HttpRequestBase req, HttpClientContext context)
       throws ClientProtocolException, IOException {
-    return !SettingsManager.settings().cache() || nonCachedMethods.contains(req.getMethod())
-        ? client.execute(req, context) : cachingClient.execute(req, context);
+    if (!settings.cache() || nonCachedMethods.contains(req.getMethod())) {
+      return client.execute(req, context);
+    }
+    CloseableHttpResponse response = cachingClient.execute(req, context);
+    CacheMonitor.responded((CacheResponseStatus) context.getAttribute(HttpCacheContext.CACHE_RESPONSE_STATUS), response);
+    return response;
   }
 
-  private static SSLContext sslContext() {
-    final String property = SettingsManager.settings().ssl();
+  private static SSLContext sslContext(Settings settings) {
+    final String property = settings.ssl();
     if (property != null && !property.isEmpty() && !"null".equals(property)) {
       if ("trustanything".equals(property)) {
         try {
@@ -0,0 +1,153 @@
+/*
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2016 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/**
+ * Unix domain socket channels. These are available from Java 16 onwards,
+ * so they're looked up reflectively and {@link #supported()} reports whether they can be used.
+ */
+class UnixSockets {
+  private static final ProtocolFamily UNIX;
+  private static final Method addressOf;
+  private static final Method openSocket;
+  private static final Method openServerSocket;
+
+  static {
+    ProtocolFamily unixTmp = null;
+    Method addressOfTmp = null;
+    Method openSocketTmp = null;
+    Method openServerSocketTmp = null;
+    try {
+      unixTmp = StandardProtocolFamily.valueOf("UNIX");
+      addressOfTmp = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class);
+      openSocketTmp = SocketChannel.class.getMethod("open", ProtocolFamily.class);
+      openServerSocketTmp = ServerSocketChannel.class.getMethod("open", ProtocolFamily.class);
+    } catch (Throwable t) {
+      unixTmp = null;
+    }
+    UNIX = unixTmp;
+    addressOf = addressOfTmp;
+    openSocket = openSocketTmp;
+    openServerSocket = openServerSocketTmp;
+  }
+
+  static boolean supported() {
+    return UNIX != null;
+  }
+
+  static ServerSocketChannel listen(File file) throws IOException {
+    file.delete();
+    ServerSocketChannel channel = (ServerSocketChannel) invoke(openServerSocket, UNIX);
+    try {
+      channel.bind(address(file), Integer.MAX_VALUE);
+    } catch (IOException e) {
+      Util.close(channel);
+      throw e;
+    }
+    file.deleteOnExit();
+    return channel;
+  }
+
+  static SocketChannel connect(File file) throws IOException {
+    SocketChannel channel = (SocketChannel) invoke(openSocket, UNIX);
+    try {
+      channel.connect(address(file));
+    } catch (IOException e) {
+      Util.close(channel);
+      throw e;
+    }
+    return channel;
+  }
+
+  private static SocketAddress address(File file) throws IOException {
+    return (SocketAddress) invoke(addressOf, file.toPath());
+  }
+
+  private static Object invoke(Method method, Object arg) throws IOException {
+    if (!supported()) {
+      throw new IOException("Unix domain sockets require Java 16 or later.");
+    }
+    try {
+      return method.invoke(null, arg);
+    } catch (InvocationTargetException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    } catch (IllegalAccessException e) {
+      throw new IOException(e);
+    }
+  }
+
+  static InputStream inputStream(final SocketChannel channel) {
+    return new InputStream() {
+      @Override
+      public int read() throws IOException {
+        byte[] bytes = new byte[1];
+        int len = read(bytes, 0, 1);
+        return len == -1 ? -1 : bytes[0] & 0xff;
+      }
+
+      @Override
+      public int read(byte[] bytes, int offset, int len) throws IOException {
+        return len == 0 ? 0 : channel.read(ByteBuffer.wrap(bytes, offset, len));
+      }
+
+      @Override
+      public void close() throws IOException {
+        channel.close();
+      }
+    };
+  }
+
+  static OutputStream outputStream(final SocketChannel channel) {
+    return new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] bytes, int offset, int len) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, len);
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      }
+
+      @Override
+      public void close() throws IOException {
+        channel.close();
+      }
+    };
+  }
+}
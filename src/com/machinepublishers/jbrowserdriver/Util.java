@@ -119,25 +119,29 @@ class Util {
 
   static void handleException(Throwable throwable) {
     if (throwable != null) {
-      String message = throwable.getMessage();
-      if ((throwable instanceof UncheckedExecutionException || throwable instanceof RemoteException)
-          && throwable.getCause() != null) {
-        throwable = throwable.getCause();
-        message = throwable.getMessage();
-      }
-      if (throwable instanceof WebDriverException && throwable instanceof RuntimeException) {
-        //Wrap the exception to ensure complete/helpful stack trace info and also preserve the original subtype
+      throw wrapException(throwable);
+    }
+  }
+
+  static RuntimeException wrapException(Throwable throwable) {
+    String message = throwable.getMessage();
+    if ((throwable instanceof UncheckedExecutionException || throwable instanceof RemoteException)
+        && throwable.getCause() != null) {
+      throwable = throwable.getCause();
+      message = throwable.getMessage();
+    }
+    if (throwable instanceof WebDriverException && throwable instanceof RuntimeException) {
+      //Wrap the exception to ensure complete/helpful stack trace info and also preserve the original subtype
+      try {
+        throwable = throwable.getClass().getConstructor(String.class, Throwable.class).newInstance(message, throwable);
+      } catch (Throwable t) {
         try {
-          throwable = throwable.getClass().getConstructor(String.class, Throwable.class).newInstance(message, throwable);
-        } catch (Throwable t) {
-          try {
-            throwable = throwable.getClass().getConstructor(Throwable.class).newInstance(throwable);
-          } catch (Throwable t2) {}
-        }
-        throw (RuntimeException) throwable;
+          throwable = throwable.getClass().getConstructor(Throwable.class).newInstance(throwable);
+        } catch (Throwable t2) {}
       }
-      throw new WebDriverException(message, throwable);
+      return (RuntimeException) throwable;
     }
+    return new WebDriverException(message, throwable);
   }
 
   static Object unwrap(Object element) {
@@ -28,11 +28,13 @@ class WindowServer extends RemoteObject implements WindowRemote,
     org.openqa.selenium.WebDriver.Window {
   private final AtomicReference<Stage> stage;
   private final StatusCode statusCode;
+  private final Session session;
 
-  WindowServer(final AtomicReference<Stage> stage, final StatusCode statusCode)
+  WindowServer(final AtomicReference<Stage> stage, final StatusCode statusCode, final Session session)
       throws RemoteException {
     this.stage = stage;
     this.statusCode = statusCode;
+    this.session = session;
   }
 
   /**
@@ -116,8 +118,8 @@ class WindowServer extends RemoteObject implements WindowRemote,
       @Override
       public Object perform() {
         if (!stage.get().isFullScreen()) {
-          int screenWidth = SettingsManager.settings().screenWidth();
-          int screenHeight = SettingsManager.settings().screenHeight();
+          int screenWidth = session.settings().screenWidth();
+          int screenHeight = session.settings().screenHeight();
 
           int width = (int) Math.rint((Double) stage.get().getWidth());
           int height = (int) Math.rint((Double) stage.get().getHeight());
@@ -153,8 +155,8 @@ class WindowServer extends RemoteObject implements WindowRemote,
       @Override
       public Object perform() {
         if (!stage.get().isFullScreen()) {
-          int screenWidth = SettingsManager.settings().screenWidth();
-          int screenHeight = SettingsManager.settings().screenHeight();
+          int screenWidth = session.settings().screenWidth();
+          int screenHeight = session.settings().screenHeight();
 
           int xPos = (int) Math.rint((Double) stage.get().getX());
           int yPos = (int) Math.rint((Double) stage.get().getY());
@@ -0,0 +1,87 @@
+/*
+ * jBrowserDriver (TM)
+ * Copyright (C) 2014-2016 Machine Publishers, LLC and the jBrowserDriver contributors
+ * https://github.com/MachinePublishers/jBrowserDriver
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.machinepublishers.jbrowserdriver.diagnostics;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+
+import com.machinepublishers.jbrowserdriver.JBrowserDriver;
+import com.machinepublishers.jbrowserdriver.Settings;
+
+/**
+ * Measures the round-trip latency of commands sent from this process to the browser process.
+ * <p>
+ * Usage: <code>java com.machinepublishers.jbrowserdriver.diagnostics.Benchmark [iterations]</code>
+ */
+public class Benchmark {
+  private static final int TEST_PORT_HTTP = Integer.parseInt(System.getProperty("jbd.testporthttp", "9000"));
+  private static final String TEST_PORTS_RMI = System.getProperty("jbd.testportsrmi", "10000-10002");
+  private static final int WARMUP = 200;
+
+  public static void main(String[] args) {
+    final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    JBrowserDriver driver = null;
+    try {
+      HttpServer.launch(TEST_PORT_HTTP);
+      final String mainPage = "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + TEST_PORT_HTTP;
+
+      long start = System.nanoTime();
+      driver = new JBrowserDriver(Settings.builder().processes(TEST_PORTS_RMI).logger(null).build());
+      report("Startup", new long[] { System.nanoTime() - start });
+
+      driver.get(mainPage);
+      for (int i = 0; i < WARMUP; i++) {
+        driver.getCurrentUrl();
+      }
+
+      long[] times = new long[iterations];
+      for (int i = 0; i < iterations; i++) {
+        start = System.nanoTime();
+        driver.getCurrentUrl();
+        times[i] = System.nanoTime() - start;
+      }
+      report("Round trip", times);
+    } catch (Throwable t) {
+      t.printStackTrace();
+    } finally {
+      if (driver != null) {
+        driver.quit();
+      }
+      HttpServer.stop();
+    }
+  }
+
+  static void report(String label, long[] times) {
+    long[] sorted = Arrays.copyOf(times, times.length);
+    Arrays.sort(sorted);
+    long total = 0;
+    for (long time : sorted) {
+      total += time;
+    }
+    System.out.println(new StringBuilder()
+        .append(label).append(":  n=").append(sorted.length)
+        .append("  mean=").append(micros(total / sorted.length))
+        .append("  p50=").append(micros(sorted[sorted.length / 2]))
+        .append("  p99=").append(micros(sorted[Math.min(sorted.length - 1, (int) (sorted.length * .99))]))
+        .append("  max=").append(micros(sorted[sorted.length - 1])));
+  }
+
+  private static String micros(long nanos) {
+    return (nanos / 1000) + " us";
+  }
+}